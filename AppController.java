@@ -2,6 +2,7 @@ import java.util.List;
 import java.util.UUID;
 import java.math.BigDecimal;
 import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Abstract base class that handles core application logic and state.
@@ -14,11 +15,18 @@ public abstract class AppController {
     protected UserManager userManager;
     protected OrderManager orderManager;
     protected DriverPool driverPool;
+    protected DispatchEngine dispatchEngine;
     
     // Current session state
     protected UUID currentUserID;
     protected UserRole currentUserRole;
 
+    // Metrics (see MetricsRegistry)
+    private final LatencyHistogram loginLatency = MetricsRegistry.getDefault().histogram("app.login");
+    private final LongAdder loginFailed = MetricsRegistry.getDefault().counter("app.login.failed");
+    private final LatencyHistogram placeOrderLatency = MetricsRegistry.getDefault().histogram("app.placeOrder");
+    private final LongAdder placeOrderRejected = MetricsRegistry.getDefault().counter("app.placeOrder.rejected");
+
     /**
      * Enum for user roles
      */
@@ -36,8 +44,27 @@ public abstract class AppController {
         this.fileManager = new FileManager();
         this.restaurantManager = new RestaurantManager(fileManager);
         this.userManager = new UserManager(fileManager);
-        this.orderManager = new OrderManager();
+        this.orderManager = new OrderManager(fileManager);
         this.driverPool = new DriverPool(fileManager);
+        this.dispatchEngine = new DispatchEngine(orderManager, driverPool, fileManager);
+        this.dispatchEngine.start();
+        this.currentUserID = null;
+        this.currentUserRole = UserRole.NONE;
+        MetricsRegistry.getDefault().startExportIfConfigured();
+    }
+
+    /**
+     * Constructor for another front end on the same data, like one session of the SessionServer.
+     * Shares every manager with the given controller but keeps its own logged in user.
+     * @param shared AppController that owns the managers (and already started the dispatch engine)
+     */
+    protected AppController(AppController shared) {
+        this.fileManager = shared.fileManager;
+        this.restaurantManager = shared.restaurantManager;
+        this.userManager = shared.userManager;
+        this.orderManager = shared.orderManager;
+        this.driverPool = shared.driverPool;
+        this.dispatchEngine = shared.dispatchEngine;
         this.currentUserID = null;
         this.currentUserRole = UserRole.NONE;
     }
@@ -49,11 +76,13 @@ public abstract class AppController {
      * @return Customer if found, null otherwise
      */
     public Customer loginCustomer(String username) {
+        long start = System.nanoTime();
         Customer customer = getFileManager().getCustomerByUsername(username);
         if (customer != null) {
             currentUserID = customer.getId();
             currentUserRole = UserRole.CUSTOMER;
         }
+        recordLogin(start, customer != null);
         return customer;
     }
 
@@ -63,11 +92,13 @@ public abstract class AppController {
      * @return Driver if found, null otherwise
      */
     public Driver loginDriver(String username) {
+        long start = System.nanoTime();
         Driver driver = getFileManager().getDriverByUsername(username);
         if (driver != null) {
             currentUserID = driver.getId();
             currentUserRole = UserRole.DRIVER;
         }
+        recordLogin(start, driver != null);
         return driver;
     }
 
@@ -77,14 +108,23 @@ public abstract class AppController {
      * @return Administrator if found, null otherwise
      */
     public Administrator loginAdministrator(String username) {
+        long start = System.nanoTime();
         Administrator admin = getFileManager().getAdminByUsername(username);
         if (admin != null) {
             currentUserID = admin.getId();
             currentUserRole = UserRole.ADMINISTRATOR;
         }
+        recordLogin(start, admin != null);
         return admin;
     }
 
+    private void recordLogin(long start, boolean found) {
+        loginLatency.record(System.nanoTime() - start);
+        if (!found) {
+            loginFailed.increment();
+        }
+    }
+
     /**
      * Logs out the current user
      */
@@ -119,6 +159,35 @@ public abstract class AppController {
         return getRestaurantManager().getAllRestaurantsString();
     }
 
+    /**
+     * Searches restaurants by name or category
+     * @param query Search text
+     * @param limit Most results to return
+     * @return Matching restaurants, best first
+     */
+    public List<Restaurant> searchRestaurants(String query, int limit) {
+        return getRestaurantManager().searchRestaurants(query, limit);
+    }
+
+    /**
+     * Searches menu items of every restaurant by name or category
+     * @param query Search text
+     * @param limit Most results to return
+     * @return Matching menu items, best first
+     */
+    public List<MenuItem> searchMenuItems(String query, int limit) {
+        return getRestaurantManager().searchMenuItems(query, limit);
+    }
+
+    /**
+     * Browses menu items of every restaurant by category, price range and restaurant
+     * @param query Filters, sort order and page size
+     * @return Lazy pages of menu items, sorted by price
+     */
+    public MenuPriceIndex.Pages queryMenuItems(MenuQuery query) {
+        return getRestaurantManager().queryMenuItems(query);
+    }
+
     /**
      * Gets a restaurant by ID
      * @param restaurantId UUID of the restaurant
@@ -331,7 +400,7 @@ public abstract class AppController {
         Driver driver = getFileManager().getDriver(currentUserID);
         if (driver != null) {
             getFileManager().updateDriver(currentUserID, available, driver.getAvgRating());
-            getDriverPool().updatePoolDrivers(getFileManager());
+            getDispatchEngine().refreshDrivers();
             return true;
         }
 
@@ -410,56 +479,60 @@ public abstract class AppController {
     }
 
     /**
-     * Places a new order and assigns the next available driver (customer only)
+     * Places a new order and hands it to the dispatch engine to get a driver (customer only)
      * @param customerId
      * @param items
      * @return Order if successful, null otherwise
      */
     public OrderManager.Order placeOrder(UUID customerId, List<String> items) {
-        if (currentUserRole != UserRole.CUSTOMER || currentUserID == null || !currentUserID.equals(customerId)) {
+        if (!isCurrentCustomer(customerId)) {
+            placeOrderRejected.increment();
             return null;
         }
+        long start = System.nanoTime();
+        return placeQuoted(customerId, items, getFileManager().getOrderPricer().quote(items), start);
+    }
 
-        double total = 0.0;
-        List<MenuItem> allItems = getRestaurantManager().getFileManager().getAllMenuItems();
-        for (String itemIdStr : items) {
-            try {
-                UUID itemId = UUID.fromString(itemIdStr.trim());
-                for (MenuItem item : allItems) {
-                    if (item.getItemId().equals(itemId)) {
-                        total += item.getPrice().doubleValue();
-                        break;
-                    }
-                }
-            } catch (Exception e) {}
+    /**
+     * Same as above for a basket the caller already quoted (to show the error if it's invalid),
+     * so it doesn't get priced twice
+     * @param customerId
+     * @param items
+     * @param quote OrderPricer quote of these items
+     * @return Order if successful, null otherwise (like when the quote isn't valid)
+     */
+    public OrderManager.Order placeOrder(UUID customerId, List<String> items, OrderPricer.Quote quote) {
+        if (!isCurrentCustomer(customerId)) {
+            placeOrderRejected.increment();
+            return null;
         }
+        return placeQuoted(customerId, items, quote, System.nanoTime());
+    }
 
-        OrderManager.Order newOrder = getOrderManager().place(customerId, items, total);
+    private boolean isCurrentCustomer(UUID customerId) {
+        return currentUserRole == UserRole.CUSTOMER && currentUserID != null && currentUserID.equals(customerId);
+    }
+
+    private OrderManager.Order placeQuoted(UUID customerId, List<String> items, OrderPricer.Quote quote, long start) {
+        if (!quote.isValid()) {
+            System.err.println("Can't place order: " + quote.getError());
+            placeOrderRejected.increment();
+            return null;
+        }
+
+        OrderManager.Order newOrder = getOrderManager().place(customerId, quote.getRestaurantId(), items, quote.getTotalCents()); // saved by OrderManager
         if (newOrder == null) {
+            placeOrderRejected.increment();
             return null;
         }
-        
-        List<UUID> itemUuids = new java.util.ArrayList<>();
-        for (String i : items) itemUuids.add(UUID.fromString(i));
-        
-        getFileManager().appendOrder(
-            newOrder.getId(), 
-            newOrder.getCustomerId(), 
-            allItems.stream()
-                .filter(i -> i.getItemId().toString().equals(items.get(0)))
-                .findFirst().map(MenuItem::getRestaurantId).orElse(UUID.randomUUID()), // This one is weird. Not a good way to do this. Maybe we should fix this... maybe not.
-            itemUuids,
-            newOrder.getStatus().toString(),
-            null,
-            newOrder.getCreatedAt(),
-            total
-        );
-
-        if (!getDriverPool().isEmpty()) {
-            getOrderManager().acceptNext(getDriverPool().getNextAvailableDriver().getId());
-            getFileManager().updateOrder(newOrder.getId(), "ACCEPTED", newOrder.getAssignedDriverId());
+        Customer customer = getFileManager().getCustomer(customerId);
+        if (customer != null) {
+            customer.addOrder(newOrder.getId());
         }
 
+        getDispatchEngine().submit(newOrder);
+
+        placeOrderLatency.record(System.nanoTime() - start);
         return newOrder;
     }
 
@@ -467,11 +540,11 @@ public abstract class AppController {
      * Update order status
      * @return true if successful
      */
-    public void updateOrderStatus(UUID orderId, OrderManager.Status status) {
+    public boolean updateOrderStatus(UUID orderId, OrderManager.Status status) {
         if (currentUserRole != UserRole.ADMINISTRATOR) {
-            return;
+            return false;
         }
-        getOrderManager().markStatus(orderId, status);
+        return getOrderManager().markStatus(orderId, status);
     }
 
     // ==================== Getters ====================
@@ -496,6 +569,10 @@ public abstract class AppController {
         return driverPool;
     }
 
+    public DispatchEngine getDispatchEngine() {
+        return dispatchEngine;
+    }
+
     public OrderManager getOrderManager() {
         return orderManager;
     }
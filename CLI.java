@@ -13,6 +13,7 @@ public class CLI extends AppController {
     // CLI-specific variables
     private Scanner scanner;
     private OrderSimulator simulator;
+    private static final int SEARCH_LIMIT = 10; // results shown per section
 
     // constructor
     public CLI(){
@@ -33,6 +34,10 @@ public class CLI extends AppController {
         if (simulator != null) {
             simulator.stop();
         }
+        getDispatchEngine().stop();
+        getOrderManager().close();
+        getFileManager().close();
+        MetricsRegistry.getDefault().stopExport();
         System.out.println("Goodbye");
         System.out.println("Shutting Down...");
         scanner.close();
@@ -229,8 +234,9 @@ public class CLI extends AppController {
         System.out.println("    2. View Restaurants");
         System.out.println("    3. View A Menu");
         System.out.println("    4. Rate Most Recent Driver");
-        System.out.println("    5. Log Out");
-        System.out.println("Please Choose an Option (1-5) \n"); // change to read int input method
+        System.out.println("    5. Search Restaurants and Menus");
+        System.out.println("    6. Log Out");
+        System.out.println("Please Choose an Option (1-6) \n"); // change to read int input method
     }
 
     // prints for driver
@@ -335,7 +341,7 @@ public class CLI extends AppController {
                                 System.out.println("Driver assigned: " + order.getAssignedDriverId());
                             }
                         } else {
-                            System.out.println("\n\u001B[31mFailed to place order. No drivers available.\u001B[0m");
+                            System.out.println("\n\u001B[31mFailed to place order. Check the item IDs, every item has to be from the same restaurant.\u001B[0m");
                         }
                     } catch (Exception e) {
                         System.out.println("\n\u001B[31mError placing order: " + e.getMessage() + "\u001B[0m");
@@ -375,17 +381,8 @@ public class CLI extends AppController {
                 case 4:
                     try {
                         UUID customerId = getCurrentUserID();
-                        Map<UUID, OrderManager.Order> allOrders = getOrderManager().getAllOrders();
-                        
-                        // Find most recent order for this customer with an assigned driver
-                        OrderManager.Order mostRecentOrder = null;
-                        for (OrderManager.Order order : allOrders.values()) {
-                            if (order.getCustomerId().equals(customerId) && order.getAssignedDriverId() != null) {
-                                if (mostRecentOrder == null || order.getCreatedAt().compareTo(mostRecentOrder.getCreatedAt()) > 0) {
-                                    mostRecentOrder = order;
-                                }
-                            }
-                        }
+                        // Most recent order for this customer with an assigned driver
+                        OrderManager.Order mostRecentOrder = getOrderManager().getLatestDispatchedOrderForCustomer(customerId);
                         
                         if (mostRecentOrder == null) {
                             System.out.println("\n\u001B[31mNo orders with assigned drivers found.\u001B[0m");
@@ -399,6 +396,7 @@ public class CLI extends AppController {
                                 if (driver != null) {
                                     driver.addRating(rating);
                                     getFileManager().updateDriver(driverId, driver.isAvailable(), driver.getAvgRating());
+                                    getDriverPool().updateRating(driver);
                                     System.out.println("\n\u001B[32mRating submitted successfully!\u001B[0m");
                                 } else {
                                     System.out.println("\n\u001B[31mDriver not found.\u001B[0m");
@@ -411,13 +409,40 @@ public class CLI extends AppController {
                     waitForEnter();
                     break;
                 case 5:
+                    try {
+                        String query = readStringInput("Search for: ");
+                        List<Restaurant> foundRestaurants = searchRestaurants(query, SEARCH_LIMIT);
+                        List<MenuItem> foundItems = searchMenuItems(query, SEARCH_LIMIT);
+                        if (foundRestaurants.isEmpty() && foundItems.isEmpty()) {
+                            System.out.println("\n\u001B[31mNothing matched \"" + query + "\".\u001B[0m");
+                        }
+                        if (!foundRestaurants.isEmpty()) {
+                            System.out.println("\nRestaurants:");
+                            for (Restaurant restaurant : foundRestaurants) {
+                                System.out.println("    " + restaurant.detailsToString());
+                            }
+                        }
+                        if (!foundItems.isEmpty()) {
+                            System.out.println("\nMenu Items:");
+                            for (MenuItem item : foundItems) {
+                                Restaurant restaurant = getRestaurant(item.getRestaurantId());
+                                String from = restaurant == null ? "" : " (" + restaurant.getName() + ")";
+                                System.out.println("    " + item.detailsToString() + from);
+                            }
+                        }
+                    } catch (Exception e) {
+                        System.out.println("\n\u001B[31mError searching: " + e.getMessage() + "\u001B[0m");
+                    }
+                    waitForEnter();
+                    break;
+                case 6:
                     logout();
                     running = false;
                     printLogin();
                     mainMenuLogic(readIntInput("Please Choose an Option (1-3) \n"));
                     break;
                 default:
-                    System.out.println("\n\u001B[31mInvalid choice. Please enter a number between 1 and 5.\u001B[0m");
+                    System.out.println("\n\u001B[31mInvalid choice. Please enter a number between 1 and 6.\u001B[0m");
                     waitForEnter();
             }
         }
@@ -461,11 +486,8 @@ public class CLI extends AppController {
                             } else if (!driver.isAvailable()) {
                                 System.out.println("\n\u001B[31mYou are not available. Please change your availability first.\u001B[0m");
                             } else {
-                                OrderManager.Order order = getOrderManager().acceptNext(driverId);
+                                OrderManager.Order order = getDispatchEngine().acceptNextFor(driver);
                                 if (order != null) {
-                                    driver.setCurrentOrder(order.getId());
-                                    driver.setAvailable(false);
-                                    getFileManager().updateDriver(driverId, false, driver.getAvgRating());
                                     System.out.println("\n\u001B[32mOrder accepted successfully!\u001B[0m");
                                     System.out.println("Order ID: " + order.getId());
                                     System.out.println("Status: " + order.getStatus());
@@ -502,8 +524,11 @@ public class CLI extends AppController {
                                         System.out.println("\n    1. Mark as In Progress");
                                         int statusChoice = readIntInput("Select option (1): ");
                                         if (statusChoice == 1) {
-                                            driver.updateOrderStatus(getOrderManager(), OrderManager.Status.IN_PROGRESS);
-                                            System.out.println("\n\u001B[32mOrder status updated to IN_PROGRESS.\u001B[0m");
+                                            if (driver.updateOrderStatus(getOrderManager(), OrderManager.Status.IN_PROGRESS)) {
+                                                System.out.println("\n\u001B[32mOrder status updated to IN_PROGRESS.\u001B[0m");
+                                            } else {
+                                                System.out.println("\n\u001B[31mOrder status changed in the meantime, try again.\u001B[0m");
+                                            }
                                         } else {
                                             System.out.println("\n\u001B[31mInvalid choice.\u001B[0m");
                                         }
@@ -511,11 +536,15 @@ public class CLI extends AppController {
                                         System.out.println("\n    1. Mark as Delivered");
                                         int statusChoice = readIntInput("Select option (1): ");
                                         if (statusChoice == 1) {
-                                            driver.updateOrderStatus(getOrderManager(), OrderManager.Status.DELIVERED);
-                                            driver.setCurrentOrder(null);
-                                            driver.setAvailable(true);
-                                            getFileManager().updateDriver(driverId, true, driver.getAvgRating());
-                                            System.out.println("\n\u001B[32mOrder delivered! You are now available.\u001B[0m");
+                                            if (driver.updateOrderStatus(getOrderManager(), OrderManager.Status.DELIVERED)) {
+                                                driver.setCurrentOrder(null);
+                                                driver.setAvailable(true);
+                                                getFileManager().updateDriver(driverId, true, driver.getAvgRating());
+                                                getDispatchEngine().driverAvailable(driver);
+                                                System.out.println("\n\u001B[32mOrder delivered! You are now available.\u001B[0m");
+                                            } else {
+                                                System.out.println("\n\u001B[31mOrder status changed in the meantime, try again.\u001B[0m");
+                                            }
                                         } else {
                                             System.out.println("\n\u001B[31mInvalid choice.\u001B[0m");
                                         }
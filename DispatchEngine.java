@@ -0,0 +1,363 @@
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Matches placed orders with drivers from the DriverPool.
+ * This is the only thing that feeds and pulls from the OrderManager intake and the pool, so an order
+ * and a driver are always taken together (no more grabbing a driver and finding no order).
+ * Dispatcher threads do the pairing, UI code just submits and gets a future back.
+ */
+public class DispatchEngine {
+    /**
+     * One finished pairing
+     */
+    public static final class Dispatch {
+        private final OrderManager.Order order;
+        private final Driver driver;
+        private final long latencyNanos;
+
+        public Dispatch(OrderManager.Order order, Driver driver, long latencyNanos) {
+            this.order = order;
+            this.driver = driver;
+            this.latencyNanos = latencyNanos;
+        }
+
+        public OrderManager.Order getOrder() {
+            return this.order;
+        }
+
+        public Driver getDriver() {
+            return this.driver;
+        }
+
+        /**
+         * Gets how long the order waited between submit and getting a driver
+         * @return latency in nanoseconds
+         */
+        public long getLatencyNanos() {
+            return this.latencyNanos;
+        }
+    }
+
+    private static final class Ticket {
+        private final long submittedAt = System.nanoTime();
+        private final CompletableFuture<Dispatch> future = new CompletableFuture<>();
+    }
+
+    private final OrderManager orderManager;
+    private final DriverPool driverPool;
+    private final FileManager fileManager;
+    private final Map<UUID, Ticket> tickets = new ConcurrentHashMap<>();
+    private final ReentrantLock pairLock = new ReentrantLock(); // only held while taking one order + one driver
+    private final StripedLocks driverLocks = new StripedLocks(16); // finish and release save a driver one at a time
+    private final Semaphore work = new Semaphore(0);
+    private final Thread[] dispatchers;
+    private volatile boolean running;
+
+    // Stats
+    private final LongAdder dispatched = new LongAdder();
+    private final LongAdder totalLatencyNanos = new LongAdder();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+    private final LatencyHistogram latencyHistogram = MetricsRegistry.getDefault().histogram("dispatch.latency");
+
+    /**
+     * Constructor for DispatchEngine, one dispatcher thread per core
+     * @param orderManager OrderManager whose intake queue we drain
+     * @param driverPool DriverPool we take drivers from
+     * @param fileManager FileManager to save the pairing to
+     */
+    public DispatchEngine(OrderManager orderManager, DriverPool driverPool, FileManager fileManager) {
+        this(orderManager, driverPool, fileManager, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor for DispatchEngine
+     * @param orderManager OrderManager whose intake queue we drain
+     * @param driverPool DriverPool we take drivers from
+     * @param fileManager FileManager to save the pairing to
+     * @param threads number of dispatcher threads
+     */
+    public DispatchEngine(OrderManager orderManager, DriverPool driverPool, FileManager fileManager, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Dispatch engine needs at least one thread");
+        }
+        this.orderManager = orderManager;
+        this.driverPool = driverPool;
+        this.fileManager = fileManager;
+        this.dispatchers = new Thread[threads];
+        MetricsRegistry.getDefault().gauge("dispatch.waiting", tickets::size);
+    }
+
+    /**
+     * Starts the dispatcher threads
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        for (int i = 0; i < dispatchers.length; i++) {
+            dispatchers[i] = new Thread(this::run, "dispatcher-" + i);
+            dispatchers[i].setDaemon(true);
+            dispatchers[i].start();
+        }
+    }
+
+    /**
+     * Stops the dispatcher threads, orders still waiting stay in the intake queue
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        work.release(dispatchers.length);
+        for (Thread dispatcher : dispatchers) {
+            try {
+                dispatcher.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Queues a placed order for dispatch, returns right away.
+     * Submit after the order is saved, the order only goes in the intake queue here.
+     * @param order Order already placed with the OrderManager
+     * @return future that completes once a driver accepted the order
+     */
+    public CompletableFuture<Dispatch> submit(OrderManager.Order order) {
+        pairLock.lock(); // the ticket and the intake entry show up to dispatchers together
+        try {
+            if (order.getStatus() != OrderManager.Status.PLACED) { // already dispatched or cancelled, don't queue it twice
+                UUID driverId = order.getAssignedDriverId();
+                Driver driver = driverId == null ? null : fileManager.getDriver(driverId);
+                return CompletableFuture.completedFuture(new Dispatch(order, driver, 0));
+            }
+            Ticket ticket = tickets.get(order.getId());
+            if (ticket == null) {
+                ticket = new Ticket();
+                tickets.put(order.getId(), ticket);
+                orderManager.enqueue(order.getId());
+            }
+            work.release();
+            return ticket.future;
+        } finally {
+            pairLock.unlock();
+        }
+    }
+
+    /**
+     * Cancels an order that hasn't gone out yet, its submit future is cancelled too
+     * @param orderId UUID of the order
+     * @return false if it's already on the road or done
+     */
+    public boolean cancel(UUID orderId) {
+        if (!orderManager.cancel(orderId)) {
+            return false;
+        }
+        Ticket ticket = tickets.remove(orderId);
+        if (ticket != null) {
+            ticket.future.cancel(false);
+        }
+        // If a driver already took it, free them up again. A dispatcher still in finish does it
+        // instead, it checks for the cancel after giving the driver the order.
+        OrderManager.Order order = orderManager.get(orderId);
+        Driver driver = order.getAssignedDriverId() == null ? null : fileManager.getDriver(order.getAssignedDriverId());
+        if (driver != null) {
+            release(driver, orderId);
+        }
+        return true;
+    }
+
+    /**
+     * Forgets every waiting submit (their futures get cancelled), for after the orders were cleared
+     */
+    public void clear() {
+        pairLock.lock();
+        try {
+            for (Ticket ticket : tickets.values()) {
+                ticket.future.cancel(false);
+            }
+            tickets.clear();
+        } finally {
+            pairLock.unlock();
+        }
+    }
+
+    /**
+     * Puts a driver (back) in the pool, like after a delivery, and wakes a dispatcher
+     * @param driver Driver who is available now
+     */
+    public void driverAvailable(Driver driver) {
+        driverPool.addDriver(driver);
+        work.release();
+    }
+
+    /**
+     * Syncs the pool with FileManager (availability or rating changes) and wakes a dispatcher
+     */
+    public void refreshDrivers() {
+        driverPool.updatePoolDrivers(fileManager);
+        work.release();
+    }
+
+    /**
+     * Lets a specific driver take the next order themselves instead of waiting to be picked
+     * @param driver Driver asking for an order
+     * @return Order they accepted, null if no order is waiting
+     */
+    public OrderManager.Order acceptNextFor(Driver driver) {
+        long start = System.nanoTime();
+        OrderManager.Order order;
+        pairLock.lock();
+        try {
+            if (!orderManager.hasPending()) {
+                return null;
+            }
+            boolean wasAvailable = driver.isAvailable();
+            driverPool.removeDriver(driver);
+            order = orderManager.acceptNext(driver.getId());
+            if (order == null && wasAvailable) {
+                driver.setAvailable(true);
+                driverPool.addDriver(driver);
+            }
+        } finally {
+            pairLock.unlock();
+        }
+        if (order != null) {
+            finish(order, driver, start);
+        }
+        return order;
+    }
+
+    /**
+     * Gets how many orders have been dispatched
+     * @return long
+     */
+    public long getDispatchCount() {
+        return dispatched.sum();
+    }
+
+    /**
+     * Gets the average wait between submit and dispatch
+     * @return milliseconds, 0 if nothing was dispatched yet
+     */
+    public double getAverageLatencyMillis() {
+        long count = dispatched.sum();
+        return count == 0 ? 0 : totalLatencyNanos.sum() / (double) count / 1_000_000.0;
+    }
+
+    /**
+     * Gets the longest wait between submit and dispatch
+     * @return milliseconds
+     */
+    public double getMaxLatencyMillis() {
+        return maxLatencyNanos.get() / 1_000_000.0;
+    }
+
+    /**
+     * Gets how many submitted orders are still waiting for a driver
+     * @return int
+     */
+    public int getWaitingCount() {
+        return tickets.size();
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                work.tryAcquire(100, TimeUnit.MILLISECONDS); // timeout covers drivers added straight to the pool
+            } catch (InterruptedException e) {
+                return;
+            }
+            while (running && dispatchOne()) {
+                // keep pairing while there are orders and drivers
+            }
+        }
+    }
+
+    /**
+     * Takes one order and one driver together, the file writes happen after the lock is let go
+     * so several dispatchers can be saving pairings at once
+     */
+    private boolean dispatchOne() {
+        OrderManager.Order order;
+        Driver driver;
+        pairLock.lock();
+        try {
+            if (!orderManager.hasPending() || driverPool.isEmpty()) {
+                return false;
+            }
+            driver = driverPool.getNextAvailableDriver();
+            if (driver == null) {
+                return false;
+            }
+            order = orderManager.acceptNext(driver.getId());
+            if (order == null) {
+                driver.setAvailable(true);
+                driverPool.addDriver(driver);
+                return false;
+            }
+        } finally {
+            pairLock.unlock();
+        }
+        finish(order, driver, System.nanoTime());
+        return true;
+    }
+
+    private void finish(OrderManager.Order order, Driver driver, long start) {
+        orderManager.persistAccepted(order); // out here so the pair lock isn't held over a disk write
+        Lock driverLock = driverLocks.lockFor(driver.getId()); // release saves the driver under this too, so the file ends up with whoever was last
+        driverLock.lock();
+        try {
+            driver.setCurrentOrder(order.getId());
+            driver.setAvailable(false);
+            driver.addOrder(order.getId());
+            fileManager.updateDriver(driver.getId(), false, driver.getAvgRating());
+        } finally {
+            driverLock.unlock();
+        }
+        if (order.getStatus() == OrderManager.Status.CANCELLED) {
+            // cancelled after acceptNext but before the driver had it, so cancel couldn't free them
+            release(driver, order.getId());
+        }
+
+        Ticket ticket = tickets.remove(order.getId());
+        long latency = System.nanoTime() - (ticket != null ? ticket.submittedAt : start);
+        dispatched.increment();
+        totalLatencyNanos.add(latency);
+        maxLatencyNanos.accumulateAndGet(latency, Math::max);
+        latencyHistogram.record(latency);
+        if (ticket != null) {
+            ticket.future.complete(new Dispatch(order, driver, latency));
+        }
+    }
+
+    /**
+     * Takes a cancelled order off its driver and puts them back in the pool.
+     * cancel and finish can both get here for the same order, only the first one does anything.
+     */
+    private void release(Driver driver, UUID orderId) {
+        Lock driverLock = driverLocks.lockFor(driver.getId());
+        driverLock.lock();
+        try {
+            if (!driver.clearCurrentOrder(orderId)) {
+                return;
+            }
+            fileManager.updateDriver(driver.getId(), true, driver.getAvgRating());
+        } finally {
+            driverLock.unlock();
+        }
+        driverAvailable(driver);
+    }
+}
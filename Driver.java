@@ -1,12 +1,16 @@
 import java.util.UUID;
 
+/**
+ * Drivers are shared by every session and the dispatcher, so changes go through the driver's
+ * monitor and the fields read from other threads are volatile.
+ */
 public class Driver extends User implements Comparable<Driver> {
     // variables
-    private boolean available;
-    private double avgRating;
-    private int rateCounter;
+    private volatile boolean available;
+    private volatile double avgRating;
+    private int rateCounter; // guarded by this, like ratings
     private final int[] ratings;
-    private UUID currentOrder;
+    private volatile UUID currentOrder;
 
     // constructor
     public Driver(UUID id, String name, String username, String email){
@@ -23,28 +27,45 @@ public class Driver extends User implements Comparable<Driver> {
     public boolean isAvailable() {
         return available;
     }
-    public void setAvailable(boolean available) {
+    public synchronized void setAvailable(boolean available) {
         this.available = available;
     }
     public double getAvgRating() {
         return avgRating;
     }
-    public void setAvgRating(double avgRating) {
+    public synchronized void setAvgRating(double avgRating) {
         this.avgRating = avgRating;
     }
     public UUID getCurrentOrder() {
         return currentOrder;
     }
-    public void setCurrentOrder(UUID currentOrder) {
+    public synchronized void setCurrentOrder(UUID currentOrder) {
         this.currentOrder = currentOrder;
     }
 
+    /**
+     * Takes an order off the driver, but only if it's still the one they have
+     * @param orderId UUID of the order
+     * @return true if it was their current order
+     */
+    public synchronized boolean clearCurrentOrder(UUID orderId) {
+        if (orderId == null || !orderId.equals(currentOrder)) {
+            return false;
+        }
+        currentOrder = null;
+        return true;
+    }
+
     // methods
-    public void updateOrderStatus(OrderManager orderManager, OrderManager.Status status){
-        orderManager.markStatus(currentOrder, status);
+    /**
+     * Moves the driver's current order to a new status
+     * @return false if the order can't go to that status from where it is
+     */
+    public boolean updateOrderStatus(OrderManager orderManager, OrderManager.Status status){
+        return orderManager.markStatus(currentOrder, status);
     }
     /**
-     * Calculates the average rating from the ratings array... duh?
+     * Calculates the average rating from the ratings array... duh? Caller holds the lock.
      */
     private void calcAvgRating(){
         int sum = 0;
@@ -62,7 +83,7 @@ public class Driver extends User implements Comparable<Driver> {
      * Maintains only the last 10 ratings using a circular buffer
      * @param newRating Rating value (1-5)
      */
-    public void addRating(int newRating){
+    public synchronized void addRating(int newRating){
         if (newRating < 1 || newRating > 5) {
             throw new IllegalArgumentException("Rating must be between 1 and 5");
         }
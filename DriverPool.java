@@ -1,27 +1,50 @@
-import java.util.PriorityQueue;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
 
 public class DriverPool {
-    private PriorityQueue<Driver> driverPool;
+    /**
+     * One heap slot. The rating is copied in when the driver is added or rekeyed,
+     * so a rating change made elsewhere can't shuffle the heap under us.
+     */
+    private static class Entry {
+        private final Driver driver;
+        private final long addedAt = System.nanoTime(); // for the dispatch wait metric
+        private double rating;
+
+        Entry(Driver driver) {
+            this.driver = driver;
+            this.rating = driver.getAvgRating();
+        }
+    }
+
+    private final ArrayList<Entry> heap; // binary heap, best rating at index 0
+    private final Map<UUID, Integer> positions; // driver id -> index in heap
     private final FileManager fileManager;
+    private final LatencyHistogram dispatchWait = MetricsRegistry.getDefault().histogram("drivers.pool.wait"); // time in the pool before getting picked
 
     /**
      * Constructor for DriverPool class
      */
     public DriverPool(FileManager fileManager) {
-        this.driverPool = new PriorityQueue<>();
+        this.heap = new ArrayList<>();
+        this.positions = new HashMap<>();
         this.fileManager = fileManager;
         clearAndUpdatePool(this.fileManager);
+        MetricsRegistry.getDefault().gauge("drivers.pool.size", this::getPoolSize);
     }
 
     /**
-     * Adds a driver to the pool if they are available
+     * Adds a driver to the pool if they are available and not already in it
      * @param driver
      */
-    public void addDriver(Driver driver) {
-        if (driver.isAvailable()) {
-            this.driverPool.offer(driver);
+    public synchronized void addDriver(Driver driver) {
+        if (driver.isAvailable() && !positions.containsKey(driver.getId())) {
+            heap.add(new Entry(driver));
+            int index = heap.size() - 1;
+            positions.put(driver.getId(), index);
+            siftUp(index);
         }
         // consider feedback for unavailable drivers
     }
@@ -30,8 +53,8 @@ public class DriverPool {
      * Removes a driver from the pool and sets them to unavailable
      * @param driver
      */
-    public void removeDriver(Driver driver) {
-        this.driverPool.remove(driver);
+    public synchronized void removeDriver(Driver driver) {
+        removeEntry(driver.getId());
         driver.setAvailable(false);
         // consider feedback for unavailable drivers
     }
@@ -40,11 +63,13 @@ public class DriverPool {
      * Gets the next available driver from the pool and sets them to unavailable
      * @return Driver if available, null if pool is empty
      */
-    public Driver getNextAvailableDriver() {
-        Driver driver = this.driverPool.poll();
-        if (driver != null) {
-            driver.setAvailable(false);
+    public synchronized Driver getNextAvailableDriver() {
+        if (heap.isEmpty()) {
+            return null;
         }
+        dispatchWait.record(System.nanoTime() - heap.get(0).addedAt);
+        Driver driver = removeAt(0);
+        driver.setAvailable(false);
         return driver;
     }
 
@@ -56,51 +81,147 @@ public class DriverPool {
         this.addDriver(driver); // re-add driver to the pool
     }
 
+    /**
+     * Moves a driver to the right spot after their rating changed (call it after Driver.addRating)
+     * @param driver Driver whose rating changed, ignored if they're not in the pool
+     */
+    public synchronized void updateRating(Driver driver) {
+        Integer index = positions.get(driver.getId());
+        if (index == null) {
+            return;
+        }
+        Entry entry = heap.get(index);
+        double old = entry.rating;
+        entry.rating = driver.getAvgRating();
+        if (entry.rating > old) {
+            siftUp(index);
+        } else if (entry.rating < old) {
+            siftDown(index);
+        }
+    }
+
+    /**
+     * Checks if a driver is waiting in the pool
+     * @param driverId UUID of the driver
+     * @return boolean
+     */
+    public synchronized boolean contains(UUID driverId) {
+        return positions.containsKey(driverId);
+    }
+
     /**
      * Gets the current size of the driver pool
      * @return int
      */
-    public int getPoolSize() {
-        return driverPool.size();
+    public synchronized int getPoolSize() {
+        return heap.size();
     }
 
     /**
      * Checks if the driver pool is empty
      * @return boolean
      */
-    public boolean isEmpty() {
-        return driverPool.isEmpty();
+    public synchronized boolean isEmpty() {
+        return heap.isEmpty();
     }
 
     /**
      * Clears the driver pool
      */
-    public void clearPool() {
-        driverPool.clear();
-    }  
+    public synchronized void clearPool() {
+        heap.clear();
+        positions.clear();
+    }
 
     /**
      * Clears and updates the driver pool using FileManager
      * @param fileManager
      */
-    public void clearAndUpdatePool(FileManager fileManager) {
+    public synchronized void clearAndUpdatePool(FileManager fileManager) {
         this.clearPool();
         this.updatePoolDrivers(fileManager);
     }
 
     /**
-     * Updates the driver pool with newly available drivers using FileManager
+     * Syncs the driver pool with FileManager: adds newly available drivers,
+     * drops ones that went unavailable and picks up rating changes
      * @param fileManager
      */
-    public void updatePoolDrivers(FileManager fileManager) {
-        // Add available drivers from FM
+    public synchronized void updatePoolDrivers(FileManager fileManager) {
         Map<UUID, Driver> drivers = fileManager.getAllDrivers();
         if (drivers != null) {
             for (Driver driver : drivers.values()) {
-                if (driver.isAvailable() && !driverPool.contains(driver)) {
+                if (!positions.containsKey(driver.getId())) {
                     this.addDriver(driver);
+                } else if (!driver.isAvailable()) {
+                    removeEntry(driver.getId());
+                } else {
+                    updateRating(driver);
                 }
             }
         }
     }
-}
\ No newline at end of file
+
+    private void removeEntry(UUID driverId) {
+        Integer index = positions.get(driverId);
+        if (index != null) {
+            removeAt(index);
+        }
+    }
+
+    /**
+     * Takes the entry at index out of the heap, O(log n)
+     */
+    private Driver removeAt(int index) {
+        Entry removed = heap.get(index);
+        positions.remove(removed.driver.getId());
+        Entry last = heap.remove(heap.size() - 1);
+        if (index < heap.size()) {
+            heap.set(index, last);
+            positions.put(last.driver.getId(), index);
+            siftDown(index);
+            siftUp(index);
+        }
+        return removed.driver;
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (heap.get(index).rating <= heap.get(parent).rating) {
+                break;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index) {
+        int size = heap.size();
+        while (true) {
+            int best = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if (left < size && heap.get(left).rating > heap.get(best).rating) {
+                best = left;
+            }
+            if (right < size && heap.get(right).rating > heap.get(best).rating) {
+                best = right;
+            }
+            if (best == index) {
+                return;
+            }
+            swap(index, best);
+            index = best;
+        }
+    }
+
+    private void swap(int a, int b) {
+        Entry ea = heap.get(a);
+        Entry eb = heap.get(b);
+        heap.set(a, eb);
+        heap.set(b, ea);
+        positions.put(eb.driver.getId(), a);
+        positions.put(ea.driver.getId(), b);
+    }
+}
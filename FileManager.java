@@ -2,15 +2,28 @@ import java.io.*;
 import java.math.BigDecimal;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.stream.Collectors;
 
-public class FileManager {
+public final class FileManager {
     private static final String MENU_FILE = "menu.txt";
     private static final String RESTAURANTS_FILE = "restaurants.txt";
     private static final String CUSTOMERS_FILE = "customers.txt";
     private static final String DRIVERS_FILE = "drivers.txt";
     private static final String ADMINS_FILE = "admins.txt";
     private static final String ORDERS_FILE = "orders.txt";
+    private static final String ORDERS_SEGMENT_FILE = "orders.seg";
+    private static final String ORDER_ITEMS_SEGMENT_FILE = "orders.items";
+    private static final String ARCHIVE_SEGMENT_FILE = "orders.archive.seg";
+    private static final String ARCHIVE_ITEMS_SEGMENT_FILE = "orders.archive.items";
+    static final String ORDERS_HEADER = "# Format: OrderId, CustomerId, RestaurantId, ItemIds, Status, DriverId, CreatedAt, TotalPrice"; // first line of orders.txt, OrderSegmentStore writes it too
+    private static final long PARALLEL_LOAD_BYTES = 1 << 20; // files past 1MB get chunk-parsed in parallel
+    private static final String[] STARTUP_STEPS = {"recovery", "restaurants", "menu items", "customers", "drivers", "admins", "orders", "total"};
 
     // In-memory storage
     private final Map<UUID, MenuItem> menuItems;
@@ -20,106 +33,267 @@ public class FileManager {
     private final Map<UUID, Customer> customers;
     private final Map<UUID, Driver> drivers;
     private final Map<UUID, Administrator> admins;
-    private final Map<UUID, OrderData> orders;
+    private final OrderTable orders; // primitive columns, see OrderTable
+
+    // Secondary indexes, kept in step with the tables above by every add/remove/update
+    // (the lists inside menuItemsByRestaurant are only touched under catalogLock)
+    private final Map<String, Customer> customersByUsername = new ConcurrentHashMap<>(); // keys go through normalizeKey
+    private final Map<String, Customer> customersByEmail = new ConcurrentHashMap<>();
+    private final Map<String, Driver> driversByUsername = new ConcurrentHashMap<>();
+    private final Map<String, Driver> driversByEmail = new ConcurrentHashMap<>();
+    private final Map<String, Administrator> adminsByUsername = new ConcurrentHashMap<>();
+    private final Map<String, Administrator> adminsByEmail = new ConcurrentHashMap<>();
+    private final Map<UUID, List<MenuItem>> menuItemsByRestaurant = new ConcurrentHashMap<>();
+    private final OrderPricer orderPricer = new OrderPricer(); // itemId -> (price, restaurant), read without locks
+    private final RenderCache renderCache = new RenderCache(); // browse text, bumped after every catalog change
+    private final SearchIndex restaurantSearch = new SearchIndex(); // words in restaurant name/category -> ids
+    private final SearchIndex menuItemSearch = new SearchIndex(); // words in menu item name/category -> ids
+    private final MenuPriceIndex menuPriceIndex = new MenuPriceIndex(); // menu items by category, sorted by price
+
+    // Concurrency: lookups by id go straight to the concurrent maps. Every change to a table (and its
+    // indexes) happens under that table's write lock, getAll* copies under the read lock so you get a
+    // consistent snapshot. Restaurants and menu items share one lock since they change together.
+    // Changes to an existing row also hold the row's key lock until the file record is written, so
+    // memory and disk see changes to the same row in the same order.
+    private final ReadWriteLock catalogLock = new ReentrantReadWriteLock();
+    private final ReadWriteLock customerLock = new ReentrantReadWriteLock();
+    private final ReadWriteLock driverLock = new ReentrantReadWriteLock();
+    private final ReadWriteLock adminLock = new ReentrantReadWriteLock();
+    private final ReadWriteLock orderLock = new ReentrantReadWriteLock();
+    private final StripedLocks keyLocks = new StripedLocks(64);
+
+    // Shared read-only copies handed out by getAll*, dropped whenever rows are added or removed
+    private final TableSnapshot<List<Restaurant>> restaurantsSnapshot = new TableSnapshot<>();
+    private final TableSnapshot<List<MenuItem>> menuItemsSnapshot = new TableSnapshot<>();
+    private final TableSnapshot<Map<UUID, Customer>> customersSnapshot = new TableSnapshot<>();
+    private final TableSnapshot<Map<UUID, Driver>> driversSnapshot = new TableSnapshot<>();
+    private final TableSnapshot<Map<UUID, Administrator>> adminsSnapshot = new TableSnapshot<>();
+
+    // Disk state
+    private final StorageJournal journal; // null when every change rewrites the data file
+    private final StorageOptions options;
+    private final OrderSegmentStore orderSegments; // null when orders live in orders.txt
+    private final OrderArchive orderArchive; // null unless StorageOptions.isArchiveDelivered
+    private final Map<String, GroupCommitWriter> writers = new ConcurrentHashMap<>();
+    private final Map<String, Long> loadTimings = new ConcurrentHashMap<>(); // startup step -> nanos
+    private static final Map<String, Object> fileLocks = new ConcurrentHashMap<>(); // shared by every instance, since instances on the same folder share the files too
+
+    // Metrics (see MetricsRegistry), times are from the caller's side so they include waiting for locks
+    private final LatencyHistogram appendLatency = MetricsRegistry.getDefault().histogram("file.append");
+    private final LatencyHistogram rewriteLatency = MetricsRegistry.getDefault().histogram("file.rewrite");
+    private final LatencyHistogram journalLatency = MetricsRegistry.getDefault().histogram("file.journal");
+    private final LongAdder writeErrors = MetricsRegistry.getDefault().counter("file.write.errors");
 
     /**
-     * Nested class to represent order data as stored in file
+     * Nested class to represent order data as stored in file. Read-only, the stores hand out
+     * fresh copies, so changes go through updateOrder.
      */
-    public static class OrderData {
+    public static final class OrderData {
         private final UUID orderId;
         private final UUID customerId;
         private final UUID restaurantId;
         private final List<UUID> itemIds;
-        private String status;
-        private UUID driverId;
-        private final String createdAt;
-        private final double totalPrice;
+        private final String status;
+        private final UUID driverId;
+        private final long createdAt; // epoch millis, OrderManager.NO_TIME if unknown
+        private final long totalCents;
 
-        public OrderData(UUID orderId, UUID customerId, UUID restaurantId, List<UUID> itemIds, String status, UUID driverId, String createdAt, double totalPrice) {
+        public OrderData(UUID orderId, UUID customerId, UUID restaurantId, List<UUID> itemIds, String status, UUID driverId, long createdAt, long totalCents) {
             this.orderId = orderId;
             this.customerId = customerId;
             this.restaurantId = restaurantId;
-            this.itemIds = itemIds;
+            this.itemIds = Collections.unmodifiableList(itemIds);
             this.status = status;
             this.driverId = driverId;
             this.createdAt = createdAt;
-            this.totalPrice = totalPrice;
+            this.totalCents = totalCents;
         }
 
-        // Getters & Setters for OrderData
+        // Getters for OrderData
         public UUID getOrderId() { return orderId; }
         public UUID getCustomerId() { return customerId; }
         public UUID getRestaurantId() { return restaurantId; }
         public List<UUID> getItemIds() { return itemIds; }
         public String getStatus() { return status; }
         public UUID getDriverId() { return driverId; }
-        public String getCreatedAt() { return createdAt; }
-        public double getTotalPrice() { return totalPrice; }
-        public void setStatus(String status) { this.status = status; }
-        public void setDriverId(UUID driverId) { this.driverId = driverId; }
+        public String getCreatedAt() { return OrderManager.formatTime(createdAt); }
+        public long getCreatedAtMillis() { return createdAt; }
+        public long getTotalCents() { return totalCents; }
     }
 
     /**
      * Constructor: Creates all files if they don't exist and loads data into memory
      */
     public FileManager() {
-        menuItems = new HashMap<>();
+        this(new StorageOptions());
+    }
+
+    /**
+     * Constructor: Same as above but with custom storage settings
+     * @param options how the data files are written
+     */
+    public FileManager(StorageOptions options) {
+        this.options = options;
+        menuItems = new ConcurrentHashMap<>();
         menuItemsList = new ArrayList<>();
-        restaurants = new HashMap<>();
+        restaurants = new ConcurrentHashMap<>();
         restaurantsList = new ArrayList<>();
-        customers = new HashMap<>();
-        drivers = new HashMap<>();
-        admins = new HashMap<>();
-        orders = new HashMap<>();
+        customers = new ConcurrentHashMap<>();
+        drivers = new ConcurrentHashMap<>();
+        admins = new ConcurrentHashMap<>();
+        orders = new OrderTable();
 
         // Create files
         createFiles();
 
+        // Fold whatever the last run left in the journal so the snapshots are current
+        long recoveryStart = System.nanoTime();
+        journal = options.isJournaled() ? new StorageJournal(this::lockFor, this::flushWrites, options) : null;
+        if (journal != null) {
+            journal.compact();
+        }
+
+        orderSegments = options.getOrderFormat() == StorageOptions.OrderFormat.SEGMENT ? openOrderSegments() : null;
+        orderArchive = options.isArchiveDelivered() ? openOrderArchive() : null;
+        loadTimings.put("recovery", System.nanoTime() - recoveryStart);
+
         // Load stuff into memory
-        loadRestaurants();
-        loadMenuItems();
-        loadCustomers();
-        loadDrivers();
-        loadAdmins();
-        loadOrders();
+        loadAll();
+        if (options.isReportStartup()) {
+            System.out.print(getStartupReport());
+        }
+
+        if (journal != null) {
+            journal.start();
+        }
+    }
+
+    /**
+     * Opens the binary order segments, converting orders.txt the first time
+     */
+    private OrderSegmentStore openOrderSegments() {
+        try {
+            if (!Files.exists(path(ORDERS_SEGMENT_FILE))) {
+                OrderSegmentStore.convertFromText(path(ORDERS_FILE), path(ORDERS_SEGMENT_FILE), path(ORDER_ITEMS_SEGMENT_FILE));
+            }
+            return new OrderSegmentStore(path(ORDERS_SEGMENT_FILE), path(ORDER_ITEMS_SEGMENT_FILE));
+        } catch (IOException e) {
+            System.err.println("Error opening " + ORDERS_SEGMENT_FILE + ", falling back to " + ORDERS_FILE + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Opens the delivered order archive
+     */
+    private OrderArchive openOrderArchive() {
+        try {
+            return new OrderArchive(path(ARCHIVE_SEGMENT_FILE), path(ARCHIVE_ITEMS_SEGMENT_FILE));
+        } catch (IOException e) {
+            System.err.println("Error opening " + ARCHIVE_SEGMENT_FILE + ", delivered orders stay in memory: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Writes out queued appends, folds the journal into the data files and stops the background threads
+     */
+    public void close() {
+        for (GroupCommitWriter writer : writers.values()) {
+            writer.close();
+        }
+        writers.clear();
+        if (journal != null) {
+            journal.close();
+        }
+        if (orderSegments != null) {
+            orderSegments.close();
+        }
+        if (orderArchive != null) {
+            orderArchive.close();
+        }
     }
 
     public void reset() {
-        menuItems.clear();
-        menuItemsList.clear();
-        restaurants.clear();
-        restaurantsList.clear();
-        customers.clear();
-        drivers.clear();
-        admins.clear();
-        orders.clear();
-        createFiles();
+        for (String filename : writers.keySet()) {
+            flushWrites(filename);
+        }
+        List<Lock> tableLocks = Arrays.asList(catalogLock.writeLock(), customerLock.writeLock(), driverLock.writeLock(), adminLock.writeLock(), orderLock.writeLock());
+        for (Lock lock : tableLocks) {
+            lock.lock();
+        }
         try {
-            Files.write(Paths.get(RESTAURANTS_FILE), Arrays.asList("# Format: RestaurantId, Name, Category"));
-            Files.write(Paths.get(MENU_FILE), Arrays.asList("# Format: ItemId, Name, Category, Price, RestaurantId"));
-            Files.write(Paths.get(CUSTOMERS_FILE), Arrays.asList("# Format: CustomerId, Username, Name, Email"));
-            Files.write(Paths.get(DRIVERS_FILE), Arrays.asList("# Format: DriverId, Username, Name, Email, Available, AvgRating"));
-            Files.write(Paths.get(ADMINS_FILE), Arrays.asList("# Format: AdminId, Username, Name, Email"));
-            Files.write(Paths.get(ORDERS_FILE), Arrays.asList("# Format: OrderId, CustomerId, RestaurantId, ItemIds, Status, DriverId, CreatedAt, TotalPrice"));
-        } catch (IOException e) {}
+            menuItems.clear();
+            menuItemsList.clear();
+            restaurants.clear();
+            restaurantsList.clear();
+            customers.clear();
+            drivers.clear();
+            admins.clear();
+            orders.clear();
+            menuItemsByRestaurant.clear();
+            orderPricer.clear();
+            restaurantSearch.clear();
+            menuItemSearch.clear();
+            menuPriceIndex.clear();
+            customersByUsername.clear();
+            customersByEmail.clear();
+            driversByUsername.clear();
+            driversByEmail.clear();
+            adminsByUsername.clear();
+            adminsByEmail.clear();
+            restaurantsSnapshot.invalidate();
+            menuItemsSnapshot.invalidate();
+            renderCache.clear();
+            customersSnapshot.invalidate();
+            driversSnapshot.invalidate();
+            adminsSnapshot.invalidate();
+            if (journal != null) {
+                journal.clear();
+            }
+            if (orderSegments != null) {
+                orderSegments.clear();
+            }
+            if (orderArchive != null) {
+                orderArchive.clear();
+            }
+            createFiles();
+            try {
+                Files.write(path(RESTAURANTS_FILE), Arrays.asList("# Format: RestaurantId, Name, Category"));
+                Files.write(path(MENU_FILE), Arrays.asList("# Format: ItemId, Name, Category, Price, RestaurantId"));
+                Files.write(path(CUSTOMERS_FILE), Arrays.asList("# Format: CustomerId, Username, Name, Email"));
+                Files.write(path(DRIVERS_FILE), Arrays.asList("# Format: DriverId, Username, Name, Email, Available, AvgRating"));
+                Files.write(path(ADMINS_FILE), Arrays.asList("# Format: AdminId, Username, Name, Email"));
+                Files.write(path(ORDERS_FILE), Arrays.asList(ORDERS_HEADER));
+            } catch (IOException e) {}
+        } finally {
+            for (Lock lock : tableLocks) {
+                lock.unlock();
+            }
+        }
     }
 
     /**
      * Creates all the files and adds the headers for each file
      */
     private void createFiles() {
+        try {
+            Files.createDirectories(options.getDataDirectory().toAbsolutePath());
+        } catch (IOException e) {
+            System.err.println("Error creating data folder " + options.getDataDirectory() + ": " + e.getMessage());
+        }
         createFile(RESTAURANTS_FILE, "# Format: RestaurantId, Name, Category");
         createFile(MENU_FILE, "# Format: ItemId, Name, Category, Price, RestaurantId");
         createFile(CUSTOMERS_FILE, "# Format: CustomerId, Username, Name, Email");
         createFile(DRIVERS_FILE, "# Format: DriverId, Username, Name, Email, Available, AvgRating");
         createFile(ADMINS_FILE, "# Format: AdminId, Username, Name, Email");
-        createFile(ORDERS_FILE, "# Format: OrderId, CustomerId, RestaurantId, ItemIds, Status, DriverId, CreatedAt, TotalPrice");
+        createFile(ORDERS_FILE, ORDERS_HEADER);
     }
 
     private void createFile(String filename, String header) {
         try {
-            if (!Files.exists(Paths.get(filename))) {
-                Files.write(Paths.get(filename), Arrays.asList(header));
+            if (!Files.exists(path(filename))) {
+                Files.write(path(filename), Arrays.asList(header));
             }
         } catch (IOException e) {
             System.err.println("Error creating file " + filename + ": " + e.getMessage());
@@ -127,20 +301,91 @@ public class FileManager {
     }
 
     /**
-     * Helper method to load data from a file using a parser function
+     * Loads every table. Tables that don't depend on each other load at the same time,
+     * menu items wait for restaurants. Each table's load time ends up in loadTimings.
      */
-    private void loadFromFile(String filename, String entityName, java.util.function.Consumer<String> parser) {
-        try {
-            List<String> lines = Files.readAllLines(Paths.get(filename));
-            for (String line : lines) {
-                line = line.trim();
-                if (line.isEmpty() || line.startsWith("#")) {
-                    continue;
-                }
-                parser.accept(line);
+    private void loadAll() {
+        long start = System.nanoTime();
+        CompletableFuture<Void> restaurantsLoaded = CompletableFuture.runAsync(() -> timed("restaurants", this::loadRestaurants));
+        CompletableFuture<Void> menuItemsLoaded = restaurantsLoaded.thenRunAsync(() -> timed("menu items", this::loadMenuItems));
+        CompletableFuture<Void> customersLoaded = CompletableFuture.runAsync(() -> timed("customers", this::loadCustomers));
+        CompletableFuture<Void> driversLoaded = CompletableFuture.runAsync(() -> timed("drivers", this::loadDrivers));
+        CompletableFuture<Void> adminsLoaded = CompletableFuture.runAsync(() -> timed("admins", this::loadAdmins));
+        CompletableFuture<Void> ordersLoaded = CompletableFuture.runAsync(() -> timed("orders", this::loadOrders));
+        CompletableFuture.allOf(menuItemsLoaded, customersLoaded, driversLoaded, adminsLoaded, ordersLoaded).join();
+        loadTimings.put("total", System.nanoTime() - start);
+    }
+
+    private void timed(String table, Runnable loader) {
+        long start = System.nanoTime();
+        loader.run();
+        long nanos = System.nanoTime() - start;
+        loadTimings.put(table, nanos);
+        MetricsRegistry.getDefault().histogram("file.load." + table.replace(' ', '_')).record(nanos);
+    }
+
+    /**
+     * Gets how long each startup step took
+     * @return Map of step name to milliseconds
+     */
+    public Map<String, Double> getLoadTimings() {
+        Map<String, Double> millis = new LinkedHashMap<>();
+        for (String step : STARTUP_STEPS) {
+            Long nanos = loadTimings.get(step);
+            if (nanos != null) {
+                millis.put(step, nanos / 1_000_000.0);
             }
-        } catch (IOException e) {
+        }
+        return millis;
+    }
+
+    /**
+     * Gets a readable table of startup timings and row counts
+     * @return Formatted startup report
+     */
+    public String getStartupReport() {
+        StringBuilder sb = new StringBuilder("Startup:\n");
+        for (Map.Entry<String, Double> entry : getLoadTimings().entrySet()) {
+            sb.append(String.format("    %-12s %8.2f ms", entry.getKey(), entry.getValue()));
+            Integer rows = rowCount(entry.getKey());
+            if (rows != null) {
+                sb.append(String.format("  (%d rows)", rows));
+            }
+            sb.append("\n");
+        }
+        return sb.toString();
+    }
+
+    private Integer rowCount(String table) {
+        switch (table) {
+            case "restaurants": return restaurants.size();
+            case "menu items": return menuItems.size();
+            case "customers": return customers.size();
+            case "drivers": return drivers.size();
+            case "admins": return admins.size();
+            case "orders": return orderSegments != null ? orderSegments.size() : orders.size();
+            default: return null;
+        }
+    }
+
+    /**
+     * Helper method to load data from a file using a parser function. Lines are streamed instead of read
+     * all at once, and big files are split into chunks and parsed across the ForkJoinPool.
+     * The parser returns null for lines it can't use. Results keep the file order.
+     */
+    private <T> List<T> loadFromFile(String filename, String entityName, java.util.function.Function<String, T> parser) {
+        Path path = path(filename);
+        try (java.util.stream.Stream<String> lines = Files.lines(path)) {
+            java.util.stream.Stream<String> stream = Files.size(path) >= PARALLEL_LOAD_BYTES ? lines.parallel() : lines;
+            return stream
+                .map(String::trim)
+                .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                .map(parser)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        } catch (IOException | UncheckedIOException e) {
             System.err.println("Error loading " + entityName + ": " + e.getMessage());
+            return new ArrayList<>();
         }
     }
 
@@ -150,19 +395,25 @@ public class FileManager {
     private void loadRestaurants() {
         restaurants.clear();
         restaurantsList.clear();
-        loadFromFile(RESTAURANTS_FILE, "restaurants", line -> {
+        restaurantSearch.clear();
+        List<Restaurant> loaded = loadFromFile(RESTAURANTS_FILE, "restaurants", line -> {
             try {
                 String[] parts = line.split(",");
                 if (parts.length >= 3) {
                     UUID restaurantId = UUID.fromString(parts[0].trim());
                     String name = parts[1].trim();
                     String category = parts[2].trim();
-                    Restaurant restaurant = new Restaurant(restaurantId, name, category);
-                    restaurants.put(restaurantId, restaurant);
-                    restaurantsList.add(restaurant);
+                    return new Restaurant(restaurantId, name, category);
                 }
             } catch (Exception e) { }
+            return null;
         });
+        for (Restaurant restaurant : loaded) {
+            restaurants.put(restaurant.getRestaurantId(), restaurant);
+            restaurantsList.add(restaurant);
+            restaurantSearch.put(restaurant.getRestaurantId(), restaurant.getName(), restaurant.getCategory());
+        }
+        renderCache.clear();
     }
 
     /**
@@ -171,21 +422,30 @@ public class FileManager {
     private void loadMenuItems() {
         menuItems.clear();
         menuItemsList.clear();
-        loadFromFile(MENU_FILE, "menuitems", line -> {
+        menuItemsByRestaurant.clear();
+        orderPricer.clear();
+        menuItemSearch.clear();
+        menuPriceIndex.clear();
+        List<MenuItem> loaded = loadFromFile(MENU_FILE, "menuitems", line -> {
             try {
                 String[] parts = line.split(",");
                 if (parts.length >= 5) {
                     UUID itemId = UUID.fromString(parts[0].trim());
                     String name = parts[1].trim();
                     String category = parts[2].trim();
-                    BigDecimal price = new BigDecimal(parts[3].trim());
+                    long priceCents = Money.parse(parts[3]);
                     UUID restaurantId = UUID.fromString(parts[4].trim());
-                    MenuItem item = new MenuItem(itemId, name, category, price, restaurantId);
-                    menuItems.put(itemId, item);
-                    menuItemsList.add(item);
+                    return new MenuItem(itemId, name, category, priceCents, restaurantId);
                 }
             } catch (Exception e) { }
+            return null;
         });
+        for (MenuItem item : loaded) {
+            menuItems.put(item.getItemId(), item);
+            menuItemsList.add(item);
+            indexMenuItem(item);
+        }
+        renderCache.clear();
     }
 
     /**
@@ -193,7 +453,9 @@ public class FileManager {
      */
     private void loadCustomers() {
         customers.clear();
-        loadFromFile(CUSTOMERS_FILE, "customers", line -> {
+        customersByUsername.clear();
+        customersByEmail.clear();
+        List<Customer> loaded = loadFromFile(CUSTOMERS_FILE, "customers", line -> {
             try {
                 String[] parts = line.split(",");
                 if (parts.length >= 4) {
@@ -201,11 +463,15 @@ public class FileManager {
                     String username = parts[1].trim();
                     String name = parts[2].trim();
                     String email = parts[3].trim();
-                    Customer customer = new Customer(id, name, username, email);
-                    customers.put(id, customer);
+                    return new Customer(id, name, username, email);
                 }
             } catch (Exception e) { }
+            return null;
         });
+        for (Customer customer : loaded) {
+            customers.put(customer.getId(), customer);
+            indexUser(customer, customersByUsername, customersByEmail);
+        }
     }
 
     /**
@@ -213,7 +479,9 @@ public class FileManager {
      */
     private void loadDrivers() {
         drivers.clear();
-        loadFromFile(DRIVERS_FILE, "drivers", line -> {
+        driversByUsername.clear();
+        driversByEmail.clear();
+        List<Driver> loaded = loadFromFile(DRIVERS_FILE, "drivers", line -> {
             try {
                 String[] parts = line.split(",");
                 if (parts.length >= 6) {
@@ -226,10 +494,15 @@ public class FileManager {
                     Driver driver = new Driver(id, name, username, email);
                     driver.setAvailable(available);
                     driver.setAvgRating(avgRating);
-                    drivers.put(id, driver);
+                    return driver;
                 }
             } catch (Exception e) { }
+            return null;
         });
+        for (Driver driver : loaded) {
+            drivers.put(driver.getId(), driver);
+            indexUser(driver, driversByUsername, driversByEmail);
+        }
     }
 
     /**
@@ -237,7 +510,9 @@ public class FileManager {
      */
     private void loadAdmins() {
         admins.clear();
-        loadFromFile(ADMINS_FILE, "admins", line -> {
+        adminsByUsername.clear();
+        adminsByEmail.clear();
+        List<Administrator> loaded = loadFromFile(ADMINS_FILE, "admins", line -> {
             try {
                 String[] parts = line.split(",");
                 if (parts.length >= 4) {
@@ -245,11 +520,15 @@ public class FileManager {
                     String username = parts[1].trim();
                     String name = parts[2].trim();
                     String email = parts[3].trim();
-                    Administrator admin = new Administrator(id, name, username, email);
-                    admins.put(id, admin);
+                    return new Administrator(id, name, username, email);
                 }
             } catch (Exception e) { }
+            return null;
         });
+        for (Administrator admin : loaded) {
+            admins.put(admin.getId(), admin);
+            indexUser(admin, adminsByUsername, adminsByEmail);
+        }
     }
 
     /**
@@ -257,25 +536,61 @@ public class FileManager {
      */
     private void loadOrders() {
         orders.clear();
-        loadFromFile(ORDERS_FILE, "orders", line -> {
-            try {
-                String[] parts = line.split(",");
-                if (parts.length >= 8) {
-                    UUID orderId = UUID.fromString(parts[0].trim());
-                    UUID customerId = UUID.fromString(parts[1].trim());
-                    UUID restaurantId = UUID.fromString(parts[2].trim());
-                    List<UUID> itemIds = Arrays.stream(parts[3].trim().split(","))
-                        .map(s -> UUID.fromString(s.trim()))
-                        .collect(Collectors.toList());
-                    String status = parts[4].trim();
-                    UUID driverId = parts[5].trim().equals("null") ? null : UUID.fromString(parts[5].trim());
-                    String createdAt = parts[6].trim();
-                    double totalPrice = Double.parseDouble(parts[7].trim());
-                    OrderData order = new OrderData(orderId, customerId, restaurantId, itemIds, status, driverId, createdAt, totalPrice);
-                    orders.put(orderId, order);
+        // Orders that made it into the archive but not out of the live store (stopped in between) finish moving here
+        List<UUID> archived = new ArrayList<>();
+        if (orderSegments != null) {
+            if (orderArchive != null) {
+                for (UUID orderId : orderSegments.asMap().keySet()) {
+                    if (orderArchive.contains(orderId)) {
+                        archived.add(orderId);
+                    }
                 }
-            } catch (Exception e) { }
-        });
+                for (UUID orderId : archived) {
+                    orderSegments.remove(orderId);
+                }
+            }
+            return; // read straight from the mapped segment
+        }
+        for (OrderData order : loadFromFile(ORDERS_FILE, "orders", FileManager::parseOrderLine)) {
+            if (orderArchive != null && orderArchive.contains(order.getOrderId())) {
+                archived.add(order.getOrderId());
+            } else {
+                orders.append(order);
+            }
+        }
+        if (!archived.isEmpty()) {
+            removeOrderLines(archived);
+        }
+    }
+
+    /**
+     * Parses one orders.txt line. ItemIds are comma joined inside the comma separated row,
+     * so the fixed columns are read from both ends and whatever is left in the middle is items.
+     * @param line line from orders.txt
+     * @return OrderData, or null if the line is broken
+     */
+    static OrderData parseOrderLine(String line) {
+        try {
+            String[] parts = line.split(",");
+            int n = parts.length;
+            if (n < 8) {
+                return null;
+            }
+            UUID orderId = UUID.fromString(parts[0].trim());
+            UUID customerId = UUID.fromString(parts[1].trim());
+            UUID restaurantId = UUID.fromString(parts[2].trim());
+            List<UUID> itemIds = new ArrayList<>(n - 7);
+            for (int i = 3; i < n - 4; i++) {
+                itemIds.add(UUID.fromString(parts[i].trim()));
+            }
+            String status = parts[n - 4].trim();
+            UUID driverId = parts[n - 3].trim().equals("null") ? null : UUID.fromString(parts[n - 3].trim());
+            long createdAt = OrderManager.parseTime(parts[n - 2]); // old rows have formatted text here
+            long totalCents = Money.parse(parts[n - 1]);
+            return new OrderData(orderId, customerId, restaurantId, itemIds, status, driverId, createdAt, totalCents);
+        } catch (Exception e) {
+            return null;
+        }
     }
 
     /**
@@ -283,13 +598,21 @@ public class FileManager {
      */
     public boolean addRestaurant(String name, String category) {
         UUID restaurantId = UUID.randomUUID();
-        if (restaurants.containsKey(restaurantId)) {
-            System.err.println("Restaurant with ID " + restaurantId + " already exists... idiot.");
-            return false;
-        }
         Restaurant restaurant = new Restaurant(restaurantId, name, category);
-        restaurants.put(restaurantId, restaurant);
-        restaurantsList.add(restaurant);
+        catalogLock.writeLock().lock();
+        try {
+            if (restaurants.containsKey(restaurantId)) {
+                System.err.println("Restaurant with ID " + restaurantId + " already exists... idiot.");
+                return false;
+            }
+            restaurants.put(restaurantId, restaurant);
+            restaurantsList.add(restaurant);
+            restaurantsSnapshot.invalidate();
+            restaurantSearch.put(restaurantId, name, category);
+            renderCache.invalidateListing();
+        } finally {
+            catalogLock.writeLock().unlock();
+        }
         return appendToFile(RESTAURANTS_FILE, restaurantId + ", " + name + ", " + category);
     }
 
@@ -297,12 +620,12 @@ public class FileManager {
      * Deleting a restaurant and all its menu items.
      */
     public boolean removeRestaurant(UUID restaurantId) {
-        if (!restaurants.containsKey(restaurantId)) {
+        if (restaurantId == null || !restaurants.containsKey(restaurantId)) {
             return false;
         }
 
-        List<UUID> items = menuItemsList.stream()
-            .filter(item -> item.getRestaurantId().equals(restaurantId))
+        // Menu items first, each under its own key lock (never nest two key locks)
+        List<UUID> items = getMenuItemsForRestaurant(restaurantId).stream()
             .map(MenuItem::getItemId)
             .collect(Collectors.toList());
 
@@ -310,97 +633,335 @@ public class FileManager {
             removeMenuItem(itemId);
         }
 
-        // Update the memory version of the restaurant
-        Restaurant restaurant = restaurants.remove(restaurantId);
-        restaurantsList.remove(restaurant);
+        Lock keyLock = keyLocks.lockFor(restaurantId);
+        keyLock.lock();
+        try {
+            // Update the memory version of the restaurant
+            catalogLock.writeLock().lock();
+            try {
+                Restaurant restaurant = restaurants.remove(restaurantId);
+                if (restaurant == null) {
+                    return false;
+                }
+                restaurantsList.remove(restaurant);
+                restaurantsSnapshot.invalidate();
+                restaurantSearch.remove(restaurantId);
+                renderCache.invalidateListing();
+                renderCache.invalidateMenu(restaurantId);
+            } finally {
+                catalogLock.writeLock().unlock();
+            }
 
-        //Update the file version of the restaurant
-        return removeFromFile(RESTAURANTS_FILE, restaurantId.toString());
+            //Update the file version of the restaurant
+            return removeFromFile(RESTAURANTS_FILE, restaurantId.toString());
+        } finally {
+            keyLock.unlock();
+        }
     }
 
     /**
      * Updating a restaurant crazy huh?
      */
     public boolean updateRestaurant(UUID restaurantId, String newName, String newCategory) {
-        if (!restaurants.containsKey(restaurantId)) {
+        if (restaurantId == null) {
             return false;
         }
-        Restaurant restaurant = restaurants.get(restaurantId);
-        restaurant.setName(newName);
-        restaurant.setCategory(newCategory);
-        return updateInFile(RESTAURANTS_FILE, restaurantId.toString(), restaurantId + ", " + newName + ", " + newCategory);
+        Lock keyLock = keyLocks.lockFor(restaurantId);
+        keyLock.lock();
+        try {
+            catalogLock.writeLock().lock();
+            try {
+                Restaurant restaurant = restaurants.get(restaurantId);
+                if (restaurant == null) {
+                    return false;
+                }
+                restaurant.setName(newName);
+                restaurant.setCategory(newCategory);
+                restaurantSearch.put(restaurantId, newName, newCategory);
+                renderCache.invalidateListing();
+                renderCache.invalidateMenu(restaurantId); // the menu header has the name
+            } finally {
+                catalogLock.writeLock().unlock();
+            }
+            return updateInFile(RESTAURANTS_FILE, restaurantId.toString(), restaurantId + ", " + newName + ", " + newCategory);
+        } finally {
+            keyLock.unlock();
+        }
     }
 
     public Restaurant getRestaurant(UUID restaurantId) {
-        return restaurants.get(restaurantId);
+        return restaurantId == null ? null : restaurants.get(restaurantId);
     }
 
+    /**
+     * Gets every restaurant. The list is read-only and shared until a restaurant is added or removed.
+     */
     public List<Restaurant> getAllRestaurants() {
-        return new ArrayList<>(restaurantsList);
+        catalogLock.readLock().lock();
+        try {
+            return restaurantsSnapshot.get(() -> Collections.unmodifiableList(new ArrayList<>(restaurantsList)));
+        } finally {
+            catalogLock.readLock().unlock();
+        }
     }
 
     /**
      * Make a new menu item and add it to the file.
      */
     public boolean addMenuItem(String name, String category, BigDecimal price, UUID restaurantId) {
-        if (!restaurants.containsKey(restaurantId)) {
-            System.err.println("Restaurant with ID " + restaurantId + " does not exist... how did you get here?");
-            return false;
-        }
         MenuItem item = new MenuItem(name, category, price, restaurantId);
         UUID itemId = item.getItemId();
-        if (menuItems.containsKey(itemId)) {
-            System.err.println("Menu item with ID " + itemId + " already exists... how? just how?");
-            return false;
+        catalogLock.writeLock().lock();
+        try {
+            if (restaurantId == null || !restaurants.containsKey(restaurantId)) {
+                System.err.println("Restaurant with ID " + restaurantId + " does not exist... how did you get here?");
+                return false;
+            }
+            if (menuItems.containsKey(itemId)) {
+                System.err.println("Menu item with ID " + itemId + " already exists... how? just how?");
+                return false;
+            }
+            menuItems.put(itemId, item);
+            menuItemsList.add(item);
+            indexMenuItem(item);
+            menuItemsSnapshot.invalidate();
+            renderCache.invalidateMenu(restaurantId);
+        } finally {
+            catalogLock.writeLock().unlock();
         }
-        menuItems.put(itemId, item);
-        menuItemsList.add(item);
-        return appendToFile(MENU_FILE, itemId + ", " + name + ", " + category + ", " + price + ", " + restaurantId);
+        return appendToFile(MENU_FILE, itemId + ", " + name + ", " + category + ", " + Money.format(item.getPriceCents()) + ", " + restaurantId);
     }
 
     /**
      * Removing a menu item... who would've thought?
      */
     public boolean removeMenuItem(UUID itemId) {
-        if (!menuItems.containsKey(itemId)) {
+        if (itemId == null) {
             return false;
         }
-        MenuItem item = menuItems.remove(itemId);
-        menuItemsList.remove(item);
-        return removeFromFile(MENU_FILE, itemId.toString());
+        Lock keyLock = keyLocks.lockFor(itemId);
+        keyLock.lock();
+        try {
+            catalogLock.writeLock().lock();
+            try {
+                MenuItem item = menuItems.remove(itemId);
+                if (item == null) {
+                    return false;
+                }
+                menuItemsList.remove(item);
+                unindexMenuItem(item);
+                orderPricer.remove(itemId);
+                menuItemsSnapshot.invalidate();
+                renderCache.invalidateMenu(item.getRestaurantId());
+            } finally {
+                catalogLock.writeLock().unlock();
+            }
+            return removeFromFile(MENU_FILE, itemId.toString());
+        } finally {
+            keyLock.unlock();
+        }
     }
 
     /**
      * Updating a menu item... crazy ik.
      */
     public boolean updateMenuItem(UUID itemId, String newName, String newCategory, BigDecimal newPrice, UUID newRestaurantId) {
-        if (!menuItems.containsKey(itemId)) {
+        if (itemId == null) {
             return false;
         }
-        if (!restaurants.containsKey(newRestaurantId)) {
-            System.err.println("Restaurant with ID " + newRestaurantId + " does not exist");
+        long newPriceCents;
+        try {
+            newPriceCents = Money.fromBigDecimal(newPrice); // before anything changes, so a bad price leaves the item alone
+        } catch (IllegalArgumentException | ArithmeticException e) {
+            System.err.println("Invalid price for menu item " + itemId + ": " + e.getMessage());
             return false;
         }
-        MenuItem item = menuItems.get(itemId);
-        item.setName(newName);
-        item.setCategory(newCategory);
-        item.setPrice(newPrice);
-        item.setRestaurantId(newRestaurantId);
-        return updateInFile(MENU_FILE, itemId.toString(), itemId + ", " + newName + ", " + newCategory + ", " + newPrice + ", " + newRestaurantId);
+        Lock keyLock = keyLocks.lockFor(itemId);
+        keyLock.lock();
+        try {
+            catalogLock.writeLock().lock();
+            try {
+                MenuItem item = menuItems.get(itemId);
+                if (item == null) {
+                    return false;
+                }
+                if (newRestaurantId == null || !restaurants.containsKey(newRestaurantId)) {
+                    System.err.println("Restaurant with ID " + newRestaurantId + " does not exist");
+                    return false;
+                }
+                UUID oldRestaurantId = item.getRestaurantId();
+                unindexMenuItem(item);
+                try {
+                    item.setName(newName);
+                    item.setCategory(newCategory);
+                    item.setPriceCents(newPriceCents);
+                    item.setRestaurantId(newRestaurantId);
+                } finally {
+                    indexMenuItem(item); // back in the indexes whatever happened above
+                }
+                renderCache.invalidateMenu(oldRestaurantId);
+                renderCache.invalidateMenu(newRestaurantId);
+            } finally {
+                catalogLock.writeLock().unlock();
+            }
+            return updateInFile(MENU_FILE, itemId.toString(), itemId + ", " + newName + ", " + newCategory + ", " + Money.format(newPriceCents) + ", " + newRestaurantId);
+        } finally {
+            keyLock.unlock();
+        }
+    }
+
+    /**
+     * Gets the basket pricer, kept in sync with the menu
+     * @return OrderPricer
+     */
+    public OrderPricer getOrderPricer() {
+        return orderPricer;
+    }
+
+    /**
+     * Gets the cache of rendered menus and the restaurant list, kept in sync with the catalog
+     * @return RenderCache
+     */
+    public RenderCache getRenderCache() {
+        return renderCache;
+    }
+
+    /**
+     * Searches restaurant names and categories, allowing prefixes and small typos
+     * @param query what the user typed, like "taco" or "thai noodle"
+     * @param limit most results to return
+     * @return best matches first, empty if nothing matched
+     */
+    public List<Restaurant> searchRestaurants(String query, int limit) {
+        List<Restaurant> results = new ArrayList<>();
+        for (UUID restaurantId : restaurantSearch.search(query, limit)) {
+            Restaurant restaurant = restaurants.get(restaurantId);
+            if (restaurant != null) {
+                results.add(restaurant);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Searches menu item names and categories across every restaurant, allowing prefixes and small typos
+     * @param query what the user typed, like "burrito"
+     * @param limit most results to return
+     * @return best matches first, empty if nothing matched
+     */
+    public List<MenuItem> searchMenuItems(String query, int limit) {
+        List<MenuItem> results = new ArrayList<>();
+        for (UUID itemId : menuItemSearch.search(query, limit)) {
+            MenuItem item = menuItems.get(itemId);
+            if (item != null) {
+                results.add(item);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Browses menu items of every restaurant by category, price range and restaurant, sorted by price
+     * @param query filters, sort order and page size
+     * @return lazy pages of matching items, walk them with hasNext/next
+     */
+    public MenuPriceIndex.Pages queryMenuItems(MenuQuery query) {
+        catalogLock.readLock().lock();
+        try {
+            return menuPriceIndex.query(query);
+        } finally {
+            catalogLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets every menu item category in use, lowercase
+     * @return sorted list
+     */
+    public List<String> getMenuCategories() {
+        catalogLock.readLock().lock();
+        try {
+            return menuPriceIndex.getCategories();
+        } finally {
+            catalogLock.readLock().unlock();
+        }
     }
 
     public MenuItem getMenuItem(UUID itemId) {
-        return menuItems.get(itemId);
+        return itemId == null ? null : menuItems.get(itemId);
     }
 
     public List<MenuItem> getMenuItemsForRestaurant(UUID restaurantId) {
-        return menuItemsList.stream()
-            .filter(item -> item.getRestaurantId().equals(restaurantId))
-            .collect(Collectors.toList());
+        if (restaurantId == null) {
+            return new ArrayList<>();
+        }
+        catalogLock.readLock().lock();
+        try {
+            List<MenuItem> items = menuItemsByRestaurant.get(restaurantId);
+            return items == null ? new ArrayList<>() : new ArrayList<>(items);
+        } finally {
+            catalogLock.readLock().unlock();
+        }
+    }
+
+    private void indexMenuItem(MenuItem item) {
+        menuItemsByRestaurant.computeIfAbsent(item.getRestaurantId(), id -> new ArrayList<>()).add(item);
+        orderPricer.put(item); // replaces the old entry on update, so quotes never see the item missing
+        menuItemSearch.put(item.getItemId(), item.getName(), item.getCategory());
+        menuPriceIndex.put(item);
+    }
+
+    private void unindexMenuItem(MenuItem item) {
+        List<MenuItem> items = menuItemsByRestaurant.get(item.getRestaurantId());
+        if (items != null) {
+            items.remove(item);
+            if (items.isEmpty()) {
+                menuItemsByRestaurant.remove(item.getRestaurantId());
+            }
+        }
+        menuItemSearch.remove(item.getItemId());
+        menuPriceIndex.remove(item);
+    }
+
+    /**
+     * Usernames and emails are looked up case-insensitively
+     */
+    private static String normalizeKey(String key) {
+        return key == null ? null : key.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static <T extends User> void indexUser(T user, Map<String, T> byUsername, Map<String, T> byEmail) {
+        if (user.getUsername() != null) {
+            byUsername.putIfAbsent(normalizeKey(user.getUsername()), user);
+        }
+        if (user.getEmail() != null) {
+            byEmail.putIfAbsent(normalizeKey(user.getEmail()), user);
+        }
+    }
+
+    private static <T extends User> void unindexUser(T user, Map<String, T> byUsername, Map<String, T> byEmail) {
+        if (user.getUsername() != null) {
+            byUsername.remove(normalizeKey(user.getUsername()), user);
+        }
+        if (user.getEmail() != null) {
+            byEmail.remove(normalizeKey(user.getEmail()), user);
+        }
     }
 
+    private static <T> T lookup(Map<String, T> index, String key) {
+        return key == null ? null : index.get(normalizeKey(key));
+    }
+
+    /**
+     * Gets every menu item. The list is read-only and shared until an item is added or removed.
+     */
     public List<MenuItem> getAllMenuItems() {
-        return new ArrayList<>(menuItemsList);
+        catalogLock.readLock().lock();
+        try {
+            return menuItemsSnapshot.get(() -> Collections.unmodifiableList(new ArrayList<>(menuItemsList)));
+        } finally {
+            catalogLock.readLock().unlock();
+        }
     }
 
     /**
@@ -408,42 +969,60 @@ public class FileManager {
      */
     public boolean addCustomer(String username, String name, String email) {
         UUID customerId = UUID.randomUUID();
-        if (customers.containsKey(customerId)) {
-            return false;
-        }
-        // Check for duplicate username or email
-        if (customerUsernameExists(username)) {
-            System.err.println("Customer with username " + username + " already exists");
-            return false;
-        }
-        if (customerEmailExists(email)) {
-            System.err.println("Customer with email " + email + " already exists");
-            return false;
-        }
         Customer customer = new Customer(customerId, name, username, email);
-        customers.put(customerId, customer);
+        customerLock.writeLock().lock();
+        try {
+            if (customers.containsKey(customerId)) {
+                return false;
+            }
+            // Check for duplicate username or email
+            if (customerUsernameExists(username)) {
+                System.err.println("Customer with username " + username + " already exists");
+                return false;
+            }
+            if (customerEmailExists(email)) {
+                System.err.println("Customer with email " + email + " already exists");
+                return false;
+            }
+            customers.put(customerId, customer);
+            indexUser(customer, customersByUsername, customersByEmail);
+            customersSnapshot.invalidate();
+        } finally {
+            customerLock.writeLock().unlock();
+        }
         return appendToFile(CUSTOMERS_FILE, customerId + ", " + username + ", " + name + ", " + email);
     }
 
     public boolean removeCustomer(UUID customerId) {
-        if (!customers.containsKey(customerId)) {
+        if (customerId == null) {
             return false;
         }
-        customers.remove(customerId);
-        return removeFromFile(CUSTOMERS_FILE, customerId.toString());
+        Lock keyLock = keyLocks.lockFor(customerId);
+        keyLock.lock();
+        try {
+            customerLock.writeLock().lock();
+            try {
+                Customer customer = customers.remove(customerId);
+                if (customer == null) {
+                    return false;
+                }
+                unindexUser(customer, customersByUsername, customersByEmail);
+                customersSnapshot.invalidate();
+            } finally {
+                customerLock.writeLock().unlock();
+            }
+            return removeFromFile(CUSTOMERS_FILE, customerId.toString());
+        } finally {
+            keyLock.unlock();
+        }
     }
 
     public Customer getCustomer(UUID customerId) {
-        return customers.get(customerId);
+        return customerId == null ? null : customers.get(customerId);
     }
 
     public Customer getCustomerByUsername(String username) {
-        for (Customer customer : customers.values()) {
-            if (customer.getUsername().equals(username)) {
-                return customer;
-            }
-        }
-        return null;
+        return lookup(customersByUsername, username);
     }
 
     public boolean customerUsernameExists(String username) {
@@ -451,67 +1030,104 @@ public class FileManager {
     }
 
     public boolean customerEmailExists(String email) {
-        for (Customer customer : customers.values()) {
-            if (customer.getEmail().equals(email)) {
-                return true;
-            }
-        }
-        return false;
+        return lookup(customersByEmail, email) != null;
     }
 
+    /**
+     * Gets every customer. The map is read-only and shared until a customer is added or removed.
+     */
     public Map<UUID, Customer> getAllCustomers() {
-        return new HashMap<>(customers);
+        customerLock.readLock().lock();
+        try {
+            return customersSnapshot.get(() -> Collections.unmodifiableMap(new HashMap<>(customers)));
+        } finally {
+            customerLock.readLock().unlock();
+        }
     }
 
     public boolean addDriver(String username, String name, String email, boolean available) {
         UUID driverId = UUID.randomUUID();
-        if (drivers.containsKey(driverId)) {
-            return false;
-        }
-        if (driverUsernameExists(username)) {
-            System.err.println("Driver with username " + username + " already exists");
-            return false;
-        }
-        if (driverEmailExists(email)) {
-            System.err.println("Driver with email " + email + " already exists");
-            return false;
-        }
         Driver driver = new Driver(driverId, name, username, email);
         driver.setAvailable(available);
         driver.setAvgRating(0.0);
-        drivers.put(driverId, driver);
+        driverLock.writeLock().lock();
+        try {
+            if (drivers.containsKey(driverId)) {
+                return false;
+            }
+            if (driverUsernameExists(username)) {
+                System.err.println("Driver with username " + username + " already exists");
+                return false;
+            }
+            if (driverEmailExists(email)) {
+                System.err.println("Driver with email " + email + " already exists");
+                return false;
+            }
+            drivers.put(driverId, driver);
+            indexUser(driver, driversByUsername, driversByEmail);
+            driversSnapshot.invalidate();
+        } finally {
+            driverLock.writeLock().unlock();
+        }
         return appendToFile(DRIVERS_FILE, driverId + ", " + username + ", " + name + ", " + email + ", " + available + ", 0.0");
     }
 
     public boolean removeDriver(UUID driverId) {
-        if (!drivers.containsKey(driverId)) {
+        if (driverId == null) {
             return false;
         }
-        drivers.remove(driverId);
-        return removeFromFile(DRIVERS_FILE, driverId.toString());
+        Lock keyLock = keyLocks.lockFor(driverId);
+        keyLock.lock();
+        try {
+            driverLock.writeLock().lock();
+            try {
+                Driver driver = drivers.remove(driverId);
+                if (driver == null) {
+                    return false;
+                }
+                unindexUser(driver, driversByUsername, driversByEmail);
+                driversSnapshot.invalidate();
+            } finally {
+                driverLock.writeLock().unlock();
+            }
+            return removeFromFile(DRIVERS_FILE, driverId.toString());
+        } finally {
+            keyLock.unlock();
+        }
     }
 
     public boolean updateDriver(UUID driverId, boolean available, double avgRating) {
-        if (!drivers.containsKey(driverId)) {
+        if (driverId == null) {
             return false;
         }
-        Driver driver = drivers.get(driverId);
-        driver.setAvailable(available);
-        driver.setAvgRating(avgRating);
-        return updateDriverInFile(driverId, driver, available, avgRating);
+        // Key lock keeps the memory change and the file record for this driver in the same order
+        Lock keyLock = keyLocks.lockFor(driverId);
+        keyLock.lock();
+        try {
+            Driver driver;
+            driverLock.writeLock().lock();
+            try {
+                driver = drivers.get(driverId);
+                if (driver == null) {
+                    return false;
+                }
+                driver.setAvailable(available);
+                driver.setAvgRating(avgRating);
+            } finally {
+                driverLock.writeLock().unlock();
+            }
+            return updateDriverInFile(driverId, driver, available, avgRating);
+        } finally {
+            keyLock.unlock();
+        }
     }
 
     public Driver getDriver(UUID driverId) {
-        return drivers.get(driverId);
+        return driverId == null ? null : drivers.get(driverId);
     }
 
     public Driver getDriverByUsername(String username) {
-        for (Driver driver : drivers.values()) {
-            if (driver.getUsername().equals(username)) {
-                return driver;
-            }
-        }
-        return null;
+        return lookup(driversByUsername, username);
     }
 
     public boolean driverUsernameExists(String username) {
@@ -519,55 +1135,76 @@ public class FileManager {
     }
 
     public boolean driverEmailExists(String email) {
-        for (Driver driver : drivers.values()) {
-            if (driver.getEmail().equals(email)) {
-                return true;
-            }
-        }
-        return false;
+        return lookup(driversByEmail, email) != null;
     }
 
+    /**
+     * Gets every driver. The map is read-only and shared until a driver is added or removed.
+     */
     public Map<UUID, Driver> getAllDrivers() {
-        return new HashMap<>(drivers);
+        driverLock.readLock().lock();
+        try {
+            return driversSnapshot.get(() -> Collections.unmodifiableMap(new HashMap<>(drivers)));
+        } finally {
+            driverLock.readLock().unlock();
+        }
     }
 
     public boolean addAdmin(String username, String name, String email) {
         UUID adminId = UUID.randomUUID();
-        if (admins.containsKey(adminId)) {
-            return false;
-        }
-        if (adminUsernameExists(username)) {
-            System.err.println("Administrator with username " + username + " already exists");
-            return false;
-        }
-        if (adminEmailExists(email)) {
-            System.err.println("Administrator with email " + email + " already exists");
-            return false;
-        }
         Administrator admin = new Administrator(adminId, name, username, email);
-        admins.put(adminId, admin);
+        adminLock.writeLock().lock();
+        try {
+            if (admins.containsKey(adminId)) {
+                return false;
+            }
+            if (adminUsernameExists(username)) {
+                System.err.println("Administrator with username " + username + " already exists");
+                return false;
+            }
+            if (adminEmailExists(email)) {
+                System.err.println("Administrator with email " + email + " already exists");
+                return false;
+            }
+            admins.put(adminId, admin);
+            indexUser(admin, adminsByUsername, adminsByEmail);
+            adminsSnapshot.invalidate();
+        } finally {
+            adminLock.writeLock().unlock();
+        }
         return appendToFile(ADMINS_FILE, adminId + ", " + username + ", " + name + ", " + email);
     }
 
     public boolean removeAdmin(UUID adminId) {
-        if (!admins.containsKey(adminId)) {
+        if (adminId == null) {
             return false;
         }
-        admins.remove(adminId);
-        return removeFromFile(ADMINS_FILE, adminId.toString());
+        Lock keyLock = keyLocks.lockFor(adminId);
+        keyLock.lock();
+        try {
+            adminLock.writeLock().lock();
+            try {
+                Administrator admin = admins.remove(adminId);
+                if (admin == null) {
+                    return false;
+                }
+                unindexUser(admin, adminsByUsername, adminsByEmail);
+                adminsSnapshot.invalidate();
+            } finally {
+                adminLock.writeLock().unlock();
+            }
+            return removeFromFile(ADMINS_FILE, adminId.toString());
+        } finally {
+            keyLock.unlock();
+        }
     }
 
     public Administrator getAdmin(UUID adminId) {
-        return admins.get(adminId);
+        return adminId == null ? null : admins.get(adminId);
     }
 
     public Administrator getAdminByUsername(String username) {
-        for (Administrator admin : admins.values()) {
-            if (admin.getUsername().equals(username)) {
-                return admin;
-            }
-        }
-        return null;
+        return lookup(adminsByUsername, username);
     }
 
     public boolean adminUsernameExists(String username) {
@@ -575,85 +1212,311 @@ public class FileManager {
     }
 
     public boolean adminEmailExists(String email) {
-        for (Administrator admin : admins.values()) {
-            if (admin.getEmail().equals(email)) {
-                return true;
-            }
-        }
-        return false;
+        return lookup(adminsByEmail, email) != null;
     }
 
+    /**
+     * Gets every admin. The map is read-only and shared until a admin is added or removed.
+     */
     public Map<UUID, Administrator> getAllAdmins() {
-        return new HashMap<>(admins);
+        adminLock.readLock().lock();
+        try {
+            return adminsSnapshot.get(() -> Collections.unmodifiableMap(new HashMap<>(admins)));
+        } finally {
+            adminLock.readLock().unlock();
+        }
+    }
+
+    public boolean appendOrder(UUID orderId, UUID customerId, UUID restaurantId, List<UUID> itemIds, String status, UUID driverId, long createdAt, long totalCents) {
+        return appendOrderAsync(orderId, customerId, restaurantId, itemIds, status, driverId, createdAt, totalCents).join();
     }
 
-    public boolean appendOrder(UUID orderId, UUID customerId, UUID restaurantId, List<UUID> itemIds, String status, UUID driverId, String createdAt, double totalPrice) {
-        OrderData order = new OrderData(orderId, customerId, restaurantId, itemIds, status, driverId, createdAt, totalPrice);
-        orders.put(orderId, order);
-        String line = formatOrderLine(orderId, customerId, restaurantId, itemIds, status, driverId, createdAt, totalPrice);
-        return appendToFile(ORDERS_FILE, line);
+    /**
+     * Same as appendOrder but doesn't wait for the disk. The order is visible in memory right away,
+     * the future completes once the line is durable.
+     */
+    public CompletableFuture<Boolean> appendOrderAsync(UUID orderId, UUID customerId, UUID restaurantId, List<UUID> itemIds, String status, UUID driverId, long createdAt, long totalCents) {
+        OrderData order = new OrderData(orderId, customerId, restaurantId, itemIds, status, driverId, createdAt, totalCents);
+        if (orderSegments != null) {
+            return CompletableFuture.completedFuture(orderSegments.append(order));
+        }
+        orderLock.writeLock().lock();
+        try {
+            if (!orders.append(order)) {
+                return CompletableFuture.completedFuture(false);
+            }
+        } finally {
+            orderLock.writeLock().unlock();
+        }
+        String line = formatOrderLine(orderId, customerId, restaurantId, itemIds, status, driverId, createdAt, totalCents);
+        return appendToFileAsync(ORDERS_FILE, line);
     }
 
-    private String formatOrderLine(UUID orderId, UUID customerId, UUID restaurantId, List<UUID> itemIds, String status, UUID driverId, String createdAt, double totalPrice) {
+    static String formatOrderLine(UUID orderId, UUID customerId, UUID restaurantId, List<UUID> itemIds, String status, UUID driverId, long createdAt, long totalCents) {
         String itemIdsStr = itemIds.stream()
             .map(UUID::toString)
             .collect(Collectors.joining(","));
         String driverIdText = driverId == null ? "null" : driverId.toString();
-        return orderId + ", " + customerId + ", " + restaurantId + ", " + itemIdsStr + ", " + status + ", " + driverIdText + ", " + createdAt + ", " + totalPrice;
+        String createdAtText = createdAt == OrderManager.NO_TIME ? "null" : Long.toString(createdAt);
+        return orderId + ", " + customerId + ", " + restaurantId + ", " + itemIdsStr + ", " + status + ", " + driverIdText + ", " + createdAtText + ", " + Money.format(totalCents);
     }
 
     public boolean updateOrder(UUID orderId, String newStatus, UUID driverId) {
-        if (!orders.containsKey(orderId)) {
+        if (orderId == null) {
             return false;
         }
-        OrderData order = orders.get(orderId);
-        order.setStatus(newStatus);
-        order.setDriverId(driverId);
-        return updateOrderInFile(orderId, order);
+        if (orderSegments != null) {
+            return orderSegments.updateStatus(orderId, newStatus, driverId); // fixed width, overwritten in place
+        }
+        Lock keyLock = keyLocks.lockFor(orderId);
+        keyLock.lock();
+        try {
+            OrderData order;
+            orderLock.writeLock().lock();
+            try {
+                order = orders.updateStatus(orderId, newStatus, driverId);
+                if (order == null) {
+                    return false;
+                }
+            } finally {
+                orderLock.writeLock().unlock();
+            }
+            return updateOrderInFile(orderId, order);
+        } finally {
+            keyLock.unlock();
+        }
     }
 
+    /**
+     * Gets an order, live or archived
+     */
     public OrderData getOrder(UUID orderId) {
-        return orders.get(orderId);
+        if (orderId == null) {
+            return null;
+        }
+        OrderData order = orderSegments != null ? orderSegments.get(orderId) : orders.get(orderId);
+        if (order == null && orderArchive != null) {
+            return orderArchive.get(orderId);
+        }
+        return order;
     }
 
+    /**
+     * Gets every live order, archived ones aren't in here (see getArchivedOrders).
+     * The map is a read-only view, orders are decoded as you iterate.
+     */
     public Map<UUID, OrderData> getAllOrders() {
-        return new HashMap<>(orders);
+        if (orderSegments != null) {
+            return orderSegments.asMap();
+        }
+        return orders.asMap();
+    }
+
+    /**
+     * Checks if delivered orders get archived (StorageOptions.isArchiveDelivered, and the archive opened)
+     * @return boolean
+     */
+    public boolean isArchiving() {
+        return orderArchive != null;
+    }
+
+    /**
+     * Gets how long a delivered order stays live before it's archived
+     * @return grace period in seconds
+     */
+    public long getArchiveGraceSeconds() {
+        return options.getArchiveGraceSeconds();
+    }
+
+    /**
+     * Moves delivered orders out of the live store into the archive. Only orders saved as DELIVERED
+     * move, anything else (or already gone) is skipped, so it's safe to hand it orders whose final
+     * status is still being saved.
+     * @param orderIds orders to move
+     * @return ids of the orders that moved
+     */
+    public Set<UUID> archiveOrders(Collection<UUID> orderIds) {
+        Set<UUID> moved = new HashSet<>();
+        if (orderArchive == null) {
+            return moved;
+        }
+        // Copy everything into the archive and force it once, only then drop the live copies,
+        // so a crash in between leaves orders in both places and loadOrders finishes the move
+        List<UUID> copied = new ArrayList<>();
+        for (UUID orderId : orderIds) {
+            Lock keyLock = keyLocks.lockFor(orderId);
+            keyLock.lock();
+            try {
+                OrderData order = orderSegments != null ? orderSegments.get(orderId) : orders.get(orderId);
+                if (order != null && OrderManager.Status.DELIVERED.name().equals(order.getStatus().trim())
+                        && orderArchive.add(order)) {
+                    copied.add(orderId);
+                }
+            } finally {
+                keyLock.unlock();
+            }
+        }
+        if (copied.isEmpty()) {
+            return moved;
+        }
+        orderArchive.force();
+        for (UUID orderId : copied) {
+            Lock keyLock = keyLocks.lockFor(orderId);
+            keyLock.lock(); // DELIVERED is final, nothing changed it in the meantime
+            try {
+                if (orderSegments != null) {
+                    orderSegments.remove(orderId);
+                } else {
+                    orderLock.writeLock().lock();
+                    try {
+                        orders.remove(orderId);
+                    } finally {
+                        orderLock.writeLock().unlock();
+                    }
+                }
+                moved.add(orderId);
+            } finally {
+                keyLock.unlock();
+            }
+        }
+        if (orderSegments == null) {
+            removeOrderLines(moved);
+        }
+        return moved;
+    }
+
+    /**
+     * Checks if an order is archived, without decoding it
+     * @param orderId UUID of the order
+     * @return true if it's in the archive
+     */
+    public boolean isArchived(UUID orderId) {
+        return orderId != null && orderArchive != null && orderArchive.contains(orderId);
+    }
+
+    /**
+     * Gets an archived order
+     * @param orderId UUID of the order
+     * @return OrderData, null if it isn't archived
+     */
+    public OrderData getArchivedOrder(UUID orderId) {
+        return orderId == null || orderArchive == null ? null : orderArchive.get(orderId);
+    }
+
+    /**
+     * Gets every archived order. The map is a read-only view, orders are decoded as you iterate.
+     */
+    public Map<UUID, OrderData> getArchivedOrders() {
+        return orderArchive == null ? Collections.emptyMap() : orderArchive.asMap();
+    }
+
+    /**
+     * Gets a customer's archived orders
+     * @param customerId UUID of the customer
+     * @return List in the order they were archived, empty if none
+     */
+    public List<OrderData> getArchivedOrdersForCustomer(UUID customerId) {
+        return orderArchive == null ? Collections.emptyList() : orderArchive.getForCustomer(customerId);
+    }
+
+    /**
+     * Gets a customer's most recently placed archived order without decoding the rest
+     * @param customerId UUID of the customer
+     * @param newerThan creation time (epoch millis) it has to beat, Long.MIN_VALUE for any
+     * @return OrderData, null if none was placed after newerThan
+     */
+    public OrderData getNewestArchivedOrderForCustomer(UUID customerId, long newerThan) {
+        return orderArchive == null ? null : orderArchive.getNewestForCustomer(customerId, newerThan);
+    }
+
+    /**
+     * Gets a driver's archived orders
+     * @param driverId UUID of the driver
+     * @return List in the order they were archived, empty if none
+     */
+    public List<OrderData> getArchivedOrdersForDriver(UUID driverId) {
+        return orderArchive == null ? Collections.emptyList() : orderArchive.getForDriver(driverId);
+    }
+
+    /**
+     * Lock guarding writes to a data file, shared with the journal compactor
+     * and with any other FileManager on the same folder
+     */
+    private Object lockFor(String filename) {
+        return fileLocks.computeIfAbsent(path(filename).toAbsolutePath().normalize().toString(), f -> new Object());
+    }
+
+    /**
+     * Resolves a data file name against the data folder
+     */
+    private Path path(String filename) {
+        return options.getDataDirectory().resolve(filename);
     }
 
     private boolean appendToFile(String filename, String line) {
-        try {
-            Files.write(Paths.get(filename), (line + System.lineSeparator()).getBytes(), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
-            return true;
-        } catch (IOException e) {
-            System.err.println("Error appending to " + filename + ": " + e.getMessage());
-            return false;
+        return appendToFileAsync(filename, line).join();
+    }
+
+    /**
+     * Queues a line on the file's group commit writer, lines from concurrent callers share one write
+     */
+    private CompletableFuture<Boolean> appendToFileAsync(String filename, String line) {
+        long start = System.nanoTime();
+        return writers.computeIfAbsent(filename, f -> new GroupCommitWriter(path(f), lockFor(f), options.getGroupCommitMaxBatch(), options.getGroupCommitMaxLatencyMillis()))
+            .submit(line)
+            .whenComplete((written, error) -> {
+                appendLatency.record(System.nanoTime() - start);
+                if (error != null || !Boolean.TRUE.equals(written)) {
+                    writeErrors.increment();
+                }
+            });
+    }
+
+    /**
+     * Waits for queued appends to a file to hit the disk
+     */
+    private void flushWrites(String filename) {
+        GroupCommitWriter writer = writers.get(filename);
+        if (writer != null) {
+            writer.flush();
         }
     }
 
     private boolean processFileLines(String filename, String operation, java.util.function.Function<String, String> processor) {
-        try {
-            List<String> lines = Files.readAllLines(Paths.get(filename));
-            List<String> newLines = new ArrayList<>();
-            for (String line : lines) {
-                String trimmed = line.trim();
-                if (trimmed.startsWith("#") || trimmed.isEmpty()) {
-                    newLines.add(line);
-                    continue;
-                }
-                String processed = processor.apply(line);
-                if (processed != null) {
-                    newLines.add(processed);
+        long start = System.nanoTime();
+        flushWrites(filename);
+        synchronized (lockFor(filename)) {
+            try {
+                List<String> lines = Files.readAllLines(path(filename));
+                List<String> newLines = new ArrayList<>();
+                for (String line : lines) {
+                    String trimmed = line.trim();
+                    if (trimmed.startsWith("#") || trimmed.isEmpty()) {
+                        newLines.add(line);
+                        continue;
+                    }
+                    String processed = processor.apply(line);
+                    if (processed != null) {
+                        newLines.add(processed);
+                    }
                 }
+                Files.write(path(filename), newLines);
+                return true;
+            } catch (IOException e) {
+                System.err.println("Error " + operation + " " + filename + ": " + e.getMessage());
+                writeErrors.increment();
+                return false;
+            } finally {
+                rewriteLatency.record(System.nanoTime() - start);
             }
-            Files.write(Paths.get(filename), newLines);
-            return true;
-        } catch (IOException e) {
-            System.err.println("Error " + operation + " " + filename + ": " + e.getMessage());
-            return false;
         }
     }
 
     private boolean removeFromFile(String filename, String id) {
+        if (journal != null) {
+            long start = System.nanoTime();
+            return journaled(journal.recordRemove(filename, id), start);
+        }
         return processFileLines(filename, "removing from", line -> {
             String trimmed = line.trim();
             if (trimmed.startsWith(id + ",") || trimmed.startsWith(id + " ")) {
@@ -663,31 +1526,57 @@ public class FileManager {
         });
     }
 
-    private boolean updateInFile(String filename, String id, String newLine) {
-        return updateInFile(filename, id, line -> newLine);
-    }
-
-    private boolean updateInFile(String filename, UUID id, java.util.function.Function<String, String> replacer) {
-        return updateInFile(filename, id.toString(), replacer);
+    /**
+     * Drops a batch of order lines, one pass over orders.txt when there's no journal
+     */
+    private boolean removeOrderLines(Collection<UUID> orderIds) {
+        if (journal != null) {
+            boolean written = true;
+            for (UUID orderId : orderIds) {
+                written &= removeFromFile(ORDERS_FILE, orderId.toString());
+            }
+            return written;
+        }
+        Set<String> ids = new HashSet<>();
+        for (UUID orderId : orderIds) {
+            ids.add(orderId.toString());
+        }
+        return processFileLines(ORDERS_FILE, "removing from", line -> {
+            String trimmed = line.trim();
+            int comma = trimmed.indexOf(',');
+            return comma > 0 && ids.contains(trimmed.substring(0, comma).trim()) ? null : line;
+        });
     }
 
-    private boolean updateInFile(String filename, String id, java.util.function.Function<String, String> replacer) {
+    private boolean updateInFile(String filename, String id, String newLine) {
+        if (journal != null) {
+            long start = System.nanoTime();
+            return journaled(journal.recordUpdate(filename, id, newLine), start);
+        }
         return processFileLines(filename, "updating", line -> {
             String trimmed = line.trim();
             if (trimmed.startsWith(id + ",") || trimmed.startsWith(id + " ")) {
-                return replacer.apply(line);
+                return newLine;
             }
             return line;
         });
     }
 
+    private boolean journaled(boolean written, long start) {
+        journalLatency.record(System.nanoTime() - start);
+        if (!written) {
+            writeErrors.increment();
+        }
+        return written;
+    }
+
     private boolean updateDriverInFile(UUID driverId, Driver driver, boolean available, double avgRating) {
         String newLine = driverId + ", " + driver.getUsername() + ", " + driver.getName() + ", " + driver.getEmail() + ", " + available + ", " + avgRating;
-        return updateInFile(DRIVERS_FILE, driverId, line -> newLine);
+        return updateInFile(DRIVERS_FILE, driverId.toString(), newLine);
     }
 
     private boolean updateOrderInFile(UUID orderId, OrderData order) {
-        String newLine = formatOrderLine(orderId, order.getCustomerId(), order.getRestaurantId(), order.getItemIds(), order.getStatus(), order.getDriverId(), order.getCreatedAt(), order.getTotalPrice());
-        return updateInFile(ORDERS_FILE, orderId, line -> newLine);
+        String newLine = formatOrderLine(orderId, order.getCustomerId(), order.getRestaurantId(), order.getItemIds(), order.getStatus(), order.getDriverId(), order.getCreatedAtMillis(), order.getTotalCents());
+        return updateInFile(ORDERS_FILE, orderId.toString(), newLine);
     }
 }
\ No newline at end of file
@@ -0,0 +1,163 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appends lines to one file from a single writer thread.
+ * Callers queue lines and get a future back, the writer collects everything that shows
+ * up inside the batch window and writes it with one FileChannel.write + force.
+ * The future completes with true once the line is on disk, false if the write failed.
+ */
+public class GroupCommitWriter {
+    private static final class Pending {
+        private final byte[] bytes;
+        private final CompletableFuture<Boolean> done = new CompletableFuture<>();
+
+        private Pending(byte[] bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    private final Path path;
+    private final Object fileLock;
+    private final int maxBatch;
+    private final long maxLatencyNanos;
+    private final LinkedBlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    /**
+     * Constructor for GroupCommitWriter, starts the writer thread
+     * @param path file to append to
+     * @param fileLock lock held while writing (shared with whoever rewrites the file)
+     * @param maxBatch most lines written in one go
+     * @param maxLatencyMillis how long the first line in a batch waits for company
+     */
+    public GroupCommitWriter(Path path, Object fileLock, int maxBatch, long maxLatencyMillis) {
+        this.path = path;
+        this.fileLock = fileLock;
+        this.maxBatch = maxBatch;
+        this.maxLatencyNanos = TimeUnit.MILLISECONDS.toNanos(maxLatencyMillis);
+        this.writer = new Thread(this::loop, "group-commit-" + path.getFileName());
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queues a line to be appended
+     * @param line line without the line separator
+     * @return future that completes when the line is durable
+     */
+    public CompletableFuture<Boolean> submit(String line) {
+        return enqueue((line + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Blocks until everything submitted before this call has been written
+     */
+    public void flush() {
+        enqueue(new byte[0]).join();
+    }
+
+    /**
+     * Writes whatever is still queued and stops the writer thread
+     */
+    public void close() {
+        if (!running) {
+            return;
+        }
+        flush();
+        synchronized (this) {
+            running = false;
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized CompletableFuture<Boolean> enqueue(byte[] bytes) {
+        Pending pending = new Pending(bytes);
+        if (!running) {
+            pending.done.complete(false);
+            return pending.done;
+        }
+        queue.add(pending);
+        return pending.done;
+    }
+
+    private void loop() {
+        List<Pending> batch = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + maxLatencyNanos;
+                while (batch.size() < maxBatch) {
+                    long remaining = deadline - System.nanoTime();
+                    Pending next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // Nobody should interrupt us, fail what's left instead of leaving callers hanging
+                synchronized (this) {
+                    running = false;
+                }
+                queue.drainTo(batch);
+                for (Pending pending : batch) {
+                    pending.done.complete(false);
+                }
+                return;
+            }
+            if (!batch.isEmpty()) {
+                writeBatch(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void writeBatch(List<Pending> batch) {
+        int size = 0;
+        for (Pending pending : batch) {
+            size += pending.bytes.length;
+        }
+        boolean ok = true;
+        if (size > 0) {
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            for (Pending pending : batch) {
+                buffer.put(pending.bytes);
+            }
+            buffer.flip();
+            // Open per batch, the journal compactor swaps the file out from under us
+            synchronized (fileLock) {
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    channel.force(false);
+                } catch (IOException e) {
+                    System.err.println("Error appending to " + path + ": " + e.getMessage());
+                    ok = false;
+                }
+            }
+        }
+        for (Pending pending : batch) {
+            pending.done.complete(ok);
+        }
+    }
+}
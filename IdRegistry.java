@@ -0,0 +1,155 @@
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Hands out dense int ids (0, 1, 2...) for UUIDs, so big tables can store 4 byte ints instead of
+ * 32 byte UUID objects and index plain arrays with them.
+ *
+ * The UUIDs themselves are kept as two long arrays (most and least significant bits) and looked up
+ * through an open addressing table of ints, linear probing, kept at most half full. No UUID, boxed
+ * Integer or map entry is kept per id, about 24 bytes per UUID all in.
+ *
+ * Not thread safe, the owner locks around it (OrderTable, OrderSegmentStore).
+ */
+public class IdRegistry {
+    public static final int NONE = -1;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] msbs;
+    private long[] lsbs;
+    private int[] table; // id + 1 per slot, 0 = empty
+    private int size;
+
+    public IdRegistry() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * @param expected how many UUIDs to make room for up front
+     */
+    public IdRegistry(int expected) {
+        int capacity = Math.max(INITIAL_CAPACITY, expected);
+        msbs = new long[capacity];
+        lsbs = new long[capacity];
+        table = new int[tableSizeFor(capacity)];
+    }
+
+    /**
+     * Gets the id of a UUID, handing out the next one if it's new
+     * @param id UUID, not null
+     * @return int id
+     */
+    public int intern(UUID id) {
+        long msb = id.getMostSignificantBits();
+        long lsb = id.getLeastSignificantBits();
+        int slot = probe(msb, lsb);
+        if (table[slot] != 0) {
+            return table[slot] - 1;
+        }
+        if (size == msbs.length) {
+            int capacity = msbs.length + (msbs.length >> 1);
+            msbs = Arrays.copyOf(msbs, capacity);
+            lsbs = Arrays.copyOf(lsbs, capacity);
+        }
+        int index = size++;
+        msbs[index] = msb;
+        lsbs[index] = lsb;
+        table[slot] = index + 1;
+        if (size * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        return index;
+    }
+
+    /**
+     * Gets the id of a UUID without adding it
+     * @param id UUID, null is fine
+     * @return int id, NONE if it was never interned
+     */
+    public int indexOf(UUID id) {
+        if (id == null) {
+            return NONE;
+        }
+        return table[probe(id.getMostSignificantBits(), id.getLeastSignificantBits())] - 1;
+    }
+
+    /**
+     * Gets the UUID behind an id
+     * @param index id from intern
+     * @return UUID (a new object each call), null for NONE
+     */
+    public UUID get(int index) {
+        if (index == NONE) {
+            return null;
+        }
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("No UUID with id " + index);
+        }
+        return new UUID(msbs[index], lsbs[index]);
+    }
+
+    /**
+     * Gets how many UUIDs have ids
+     * @return int
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Forgets every UUID, ids start over from 0
+     */
+    public void clear() {
+        Arrays.fill(table, 0);
+        size = 0;
+    }
+
+    /**
+     * Slot holding the UUID, or the empty slot where it would go
+     */
+    private int probe(long msb, long lsb) {
+        int mask = table.length - 1;
+        int slot = hash(msb, lsb) & mask;
+        while (true) {
+            int entry = table[slot];
+            if (entry == 0 || (msbs[entry - 1] == msb && lsbs[entry - 1] == lsb)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void rehash(int tableSize) {
+        int[] old = table;
+        table = new int[tableSize];
+        int mask = tableSize - 1;
+        for (int entry : old) {
+            if (entry != 0) {
+                int slot = hash(msbs[entry - 1], lsbs[entry - 1]) & mask;
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = entry;
+            }
+        }
+    }
+
+    /**
+     * Random UUIDs are already well mixed, but time based or hand made ones aren't,
+     * so both halves go through a 64 bit finalizer (murmur3's)
+     */
+    private static int hash(long msb, long lsb) {
+        long h = msb * 31 + lsb;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    private static int tableSizeFor(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 2; // at least twice the capacity
+        return Math.max(size, INITIAL_CAPACITY * 2);
+    }
+}
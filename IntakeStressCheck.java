@@ -0,0 +1,190 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Checks the lock-free OrderManager intake under contention: producer threads place and enqueue
+ * orders while consumer threads (one driver each) call acceptNext, all at once. Passes when every
+ * order was accepted exactly once, by the driver it says it has, and nothing is left in the intake.
+ * Runs on its own data in a temp folder. Exits 1 if the check fails, so scripts can use it.
+ *
+ * java IntakeStressCheck --producers=4 --consumers=4 --orders=200000
+ */
+public class IntakeStressCheck {
+    private int producers = 4;
+    private int consumers = 4;
+    private int orders = 200_000;
+
+    /**
+     * Runs the check once
+     * @return true if every order was accepted exactly once
+     */
+    public boolean run() {
+        Path directory;
+        try {
+            directory = Files.createTempDirectory("pasoeats-intake-");
+        } catch (IOException e) {
+            System.err.println("Error setting up stress data folder: " + e.getMessage());
+            return false;
+        }
+        StorageOptions options = new StorageOptions();
+        options.setDataDirectory(directory);
+        options.setReportStartup(false);
+        FileManager fileManager = new FileManager(options);
+        OrderManager orderManager = new OrderManager(fileManager);
+        try {
+            UUID[] placed = new UUID[orders]; // each producer fills its own slots, join makes them visible
+            ConcurrentHashMap<UUID, UUID> acceptedBy = new ConcurrentHashMap<>(); // order -> driver that got it
+            LongAdder duplicates = new LongAdder();
+            AtomicInteger producing = new AtomicInteger(producers);
+            CountDownLatch start = new CountDownLatch(1);
+            List<Thread> threads = new ArrayList<>();
+            UUID restaurantId = UUID.randomUUID();
+            List<String> items = List.of(UUID.randomUUID().toString());
+
+            for (int p = 0; p < producers; p++) {
+                int first = p;
+                threads.add(new Thread(() -> {
+                    await(start);
+                    UUID customerId = UUID.randomUUID();
+                    for (int i = first; i < orders; i += producers) { // producers split the orders between them
+                        OrderManager.Order order = orderManager.place(customerId, restaurantId, items, 100);
+                        placed[i] = order.getId();
+                        orderManager.enqueue(order.getId());
+                    }
+                    producing.decrementAndGet();
+                }, "stress-producer-" + p));
+            }
+            for (int c = 0; c < consumers; c++) {
+                threads.add(new Thread(() -> {
+                    await(start);
+                    UUID driverId = UUID.randomUUID();
+                    while (true) {
+                        boolean done = producing.get() == 0; // read before polling, so an empty poll after it means empty for good
+                        OrderManager.Order order = orderManager.acceptNext(driverId);
+                        if (order == null) {
+                            if (done) {
+                                return;
+                            }
+                            Thread.onSpinWait();
+                        } else if (acceptedBy.putIfAbsent(order.getId(), driverId) != null) {
+                            duplicates.increment();
+                        }
+                    }
+                }, "stress-consumer-" + c));
+            }
+
+            long began = System.nanoTime();
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            start.countDown();
+            for (Thread thread : threads) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            double seconds = (System.nanoTime() - began) / 1_000_000_000.0;
+
+            int missing = 0;
+            int wrongDriver = 0;
+            for (UUID orderId : placed) {
+                UUID driverId = acceptedBy.get(orderId);
+                OrderManager.Order order = orderManager.get(orderId);
+                if (driverId == null) {
+                    missing++;
+                } else if (order == null || order.getStatus() != OrderManager.Status.ACCEPTED || !driverId.equals(order.getAssignedDriverId())) {
+                    wrongDriver++;
+                }
+            }
+            boolean passed = missing == 0 && wrongDriver == 0 && duplicates.sum() == 0 && !orderManager.hasPending();
+            System.out.printf("%d producers, %d consumers, %d orders in %.2f s (%.0f orders/s)%n",
+                producers, consumers, orders, seconds, orders / seconds);
+            System.out.printf("accepted %d, twice %d, never %d, wrong driver or status %d, left in intake %b: %s%n",
+                acceptedBy.size(), duplicates.sum(), missing, wrongDriver, orderManager.hasPending(), passed ? "PASS" : "FAIL");
+            return passed;
+        } finally {
+            orderManager.close();
+            fileManager.close();
+            LoadGenerator.deleteFolder(directory);
+        }
+    }
+
+    private static void await(CountDownLatch start) {
+        try {
+            start.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ==================== Settings ====================
+    public int getProducers() {
+        return producers;
+    }
+
+    public void setProducers(int producers) {
+        if (producers < 1) {
+            throw new IllegalArgumentException("Need at least one producer");
+        }
+        this.producers = producers;
+    }
+
+    public int getConsumers() {
+        return consumers;
+    }
+
+    public void setConsumers(int consumers) {
+        if (consumers < 1) {
+            throw new IllegalArgumentException("Need at least one consumer");
+        }
+        this.consumers = consumers;
+    }
+
+    public int getOrders() {
+        return orders;
+    }
+
+    public void setOrders(int orders) {
+        if (orders < 1) {
+            throw new IllegalArgumentException("Need at least one order");
+        }
+        this.orders = orders;
+    }
+
+    public static void main(String[] args) {
+        IntakeStressCheck check = new IntakeStressCheck();
+        try {
+            for (String arg : args) {
+                int eq = arg.indexOf('=');
+                String name = eq < 0 ? arg : arg.substring(0, eq);
+                String value = eq < 0 ? "" : arg.substring(eq + 1);
+                switch (name) {
+                    case "--producers": check.setProducers(Integer.parseInt(value)); break;
+                    case "--consumers": check.setConsumers(Integer.parseInt(value)); break;
+                    case "--orders": check.setOrders(Integer.parseInt(value)); break;
+                    default:
+                        System.err.println("Unknown option " + arg);
+                        System.err.println("Options: --producers=N --consumers=N --orders=N");
+                        System.exit(2);
+                }
+            }
+        } catch (IllegalArgumentException e) { // NumberFormatException too
+            System.err.println("Bad option: " + e.getMessage());
+            System.exit(2);
+        }
+        if (!check.run()) {
+            System.exit(1);
+        }
+    }
+}
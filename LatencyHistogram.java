@@ -0,0 +1,144 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts latencies in log-linear buckets so percentiles come out within about 3% without keeping samples.
+ * Every power of two is split into 32 buckets, which covers 1ns up to centuries in under 2000 longs.
+ * Any number of threads can record at once, reads are a best effort walk over the counts.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS; // buckets per power of two
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records one latency
+     * @param nanos latency in nanoseconds, negative counts as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(value));
+        count.increment();
+        total.add(value);
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    /**
+     * Gets how many latencies were recorded
+     * @return long
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Gets the longest latency recorded
+     * @return nanoseconds
+     */
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    /**
+     * Gets the average latency
+     * @return nanoseconds, 0 if nothing was recorded
+     */
+    public double getMeanNanos() {
+        long n = count.sum();
+        return n == 0 ? 0 : total.sum() / (double) n;
+    }
+
+    /**
+     * Gets the latency that a given share of recordings were at or under
+     * @param percentile 0 to 100, like 99.9
+     * @return nanoseconds (top of the bucket, never more than the max), 0 if nothing was recorded
+     */
+    public long getPercentileNanos(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100");
+        }
+        long n = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            n += snapshot[i];
+        }
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highestValueIn(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Same as getPercentileNanos but in milliseconds, for printing
+     * @param percentile 0 to 100
+     * @return milliseconds
+     */
+    public double getPercentileMillis(double percentile) {
+        return getPercentileNanos(percentile) / 1_000_000.0;
+    }
+
+    /**
+     * Adds another histogram's recordings into this one
+     * @param other LatencyHistogram to fold in
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long c = other.counts.get(i);
+            if (c != 0) {
+                counts.addAndGet(i, c);
+            }
+        }
+        count.add(other.count.sum());
+        total.add(other.total.sum());
+        max.accumulateAndGet(other.max.get(), Math::max);
+    }
+
+    /**
+     * Forgets everything recorded so far
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        total.reset();
+        max.set(0);
+    }
+
+    /**
+     * Values under 64 get a bucket each, past that the top 6 bits pick the bucket
+     */
+    private static int bucketOf(long value) {
+        if (value < 2 * SUB_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return shift * SUB_COUNT + (int) (value >>> shift);
+    }
+
+    private static long highestValueIn(int bucket) {
+        if (bucket < 2 * SUB_COUNT) {
+            return bucket;
+        }
+        int shift = bucket / SUB_COUNT - 1;
+        long mantissa = bucket - (long) shift * SUB_COUNT;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,490 @@
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * Headless version of OrderSimulator for load testing.
+ * Customer threads place orders (as fast as they can, or at a target rate), driver threads take
+ * orders with DispatchEngine.acceptNextFor and deliver them. Nothing is drawn and the data lives in
+ * its own folder, so the real data files are never reset. Every worker gets its own seeded Random,
+ * so the same seed makes the same baskets and ratings (thread timing still varies run to run).
+ *
+ * java LoadGenerator --customers=16 --drivers=8 --rate=2000 --duration=30 --seed=7
+ */
+public class LoadGenerator {
+    private static final long IDLE_WAIT_NANOS = 50_000; // driver back-off when nothing is waiting
+    private static final double[] PERCENTILES = {50, 99, 99.9};
+
+    private int customers = 8;
+    private int drivers = 8;
+    private int restaurants = 10;
+    private int itemsPerRestaurant = 5;
+    private double targetRate = 0; // orders per second over all customers, 0 = closed loop
+    private long durationSeconds = 10;
+    private long seed = 42;
+    private Path dataDirectory; // null = temp folder, deleted after the run
+
+    private volatile boolean running;
+
+    /**
+     * Counts and latencies of one kind of operation
+     */
+    public static final class Operation {
+        private final String name;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+
+        Operation(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        public long getErrors() {
+            return errors.sum();
+        }
+    }
+
+    /**
+     * What a run did, toString gives the plain text summary
+     */
+    public static final class Report {
+        private final String setup;
+        private final long startNanos;
+        private final Operation place = new Operation("place");
+        private final Operation accept = new Operation("accept");
+        private final Operation deliver = new Operation("deliver");
+        private final LongAdder idlePolls = new LongAdder();
+        private final AtomicReference<String> firstError = new AtomicReference<>();
+        private long elapsed;
+        private int stillWaiting;
+
+        private Report(String setup) {
+            this.setup = setup;
+            this.startNanos = System.nanoTime();
+        }
+
+        public Operation getPlace() {
+            return place;
+        }
+
+        public Operation getAccept() {
+            return accept;
+        }
+
+        public Operation getDeliver() {
+            return deliver;
+        }
+
+        /**
+         * Gets how long the workers ran
+         * @return seconds
+         */
+        public double getElapsedSeconds() {
+            return elapsed / 1_000_000_000.0;
+        }
+
+        /**
+         * Gets how many successful operations per second
+         * @param operation one of this report's operations
+         * @return ops/s
+         */
+        public double getThroughput(Operation operation) {
+            return elapsed == 0 ? 0 : operation.getLatency().getCount() / getElapsedSeconds();
+        }
+
+        /**
+         * Gets the total number of failed operations
+         * @return long
+         */
+        public long getErrorCount() {
+            return place.getErrors() + accept.getErrors() + deliver.getErrors();
+        }
+
+        private void error(Operation operation, String message) {
+            operation.errors.increment();
+            firstError.compareAndSet(null, operation.name + ": " + message);
+        }
+
+        private void finish(int stillWaiting) {
+            this.elapsed = System.nanoTime() - startNanos;
+            this.stillWaiting = stillWaiting;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(setup).append(String.format(", ran %.1f s%n", getElapsedSeconds()));
+            sb.append(String.format("%-8s %10s %10s %8s %10s %10s %10s %10s%n",
+                "op", "count", "ops/s", "errors", "p50 ms", "p99 ms", "p99.9 ms", "max ms"));
+            for (Operation operation : new Operation[] {place, accept, deliver}) {
+                LatencyHistogram latency = operation.getLatency();
+                sb.append(String.format("%-8s %10d %10.1f %8d", operation.name, latency.getCount(), getThroughput(operation), operation.getErrors()));
+                for (double percentile : PERCENTILES) {
+                    sb.append(String.format(" %10.3f", latency.getPercentileMillis(percentile)));
+                }
+                sb.append(String.format(" %10.3f%n", latency.getMaxNanos() / 1_000_000.0));
+            }
+            sb.append("Idle driver polls: ").append(idlePolls.sum()).append(", orders still waiting: ").append(stillWaiting).append(System.lineSeparator());
+            if (firstError.get() != null) {
+                sb.append("First error: ").append(firstError.get()).append(System.lineSeparator());
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * One place this run's customers can order from
+     */
+    private static final class Shop {
+        private final List<String> itemIds = new ArrayList<>();
+    }
+
+    /**
+     * Runs the load until the duration is up
+     * @return Report, null if the data folder couldn't be set up
+     */
+    public Report run() {
+        Path directory;
+        boolean temporary = dataDirectory == null;
+        try {
+            directory = temporary ? Files.createTempDirectory("pasoeats-load-") : dataDirectory;
+            if (!temporary && Files.isDirectory(directory)) {
+                try (Stream<Path> files = Files.list(directory)) {
+                    if (files.findAny().isPresent()) {
+                        System.err.println("Load generator needs an empty data folder, " + directory + " has files in it");
+                        return null;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error setting up load data folder: " + e.getMessage());
+            return null;
+        }
+
+        StorageOptions options = new StorageOptions();
+        options.setDataDirectory(directory);
+        options.setReportStartup(false);
+        FileManager fileManager = new FileManager(options);
+        OrderManager orderManager = new OrderManager(fileManager);
+        DriverPool driverPool = new DriverPool(fileManager);
+        DispatchEngine dispatchEngine = new DispatchEngine(orderManager, driverPool, fileManager); // not started, drivers pull orders themselves
+
+        Report report = null;
+        try {
+            Random setupRandom = new Random(seed);
+            List<Shop> shops = createShops(fileManager, setupRandom);
+            List<Customer> customerList = new ArrayList<>();
+            for (int i = 0; i < customers; i++) {
+                fileManager.addCustomer("load_customer" + i, "Load Customer " + i, "load_customer" + i + "@example.com");
+                customerList.add(fileManager.getCustomerByUsername("load_customer" + i));
+            }
+            List<Driver> driverList = new ArrayList<>();
+            for (int i = 0; i < drivers; i++) {
+                fileManager.addDriver("load_driver" + i, "Load Driver " + i, "load_driver" + i + "@example.com", true);
+                driverList.add(fileManager.getDriverByUsername("load_driver" + i));
+            }
+            dispatchEngine.refreshDrivers();
+
+            String mode = targetRate > 0 ? String.format("target %.0f orders/s", targetRate) : "closed loop";
+            report = new Report(customers + " customers, " + drivers + " drivers, " + mode + ", seed " + seed);
+            List<Thread> workers = new ArrayList<>();
+            running = true;
+            for (int i = 0; i < customers; i++) {
+                Customer customer = customerList.get(i);
+                Random random = new Random(seed + 1 + i);
+                Report r = report;
+                workers.add(new Thread(() -> customerLoop(customer, random, shops, orderManager, dispatchEngine, fileManager, r), "load-customer-" + i));
+            }
+            for (int i = 0; i < drivers; i++) {
+                Driver driver = driverList.get(i);
+                Random random = new Random(seed + 1 + customers + i);
+                Report r = report;
+                workers.add(new Thread(() -> driverLoop(driver, random, orderManager, dispatchEngine, fileManager, r), "load-driver-" + i));
+            }
+            for (Thread worker : workers) {
+                worker.start();
+            }
+            try {
+                Thread.sleep(durationSeconds * 1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            running = false;
+            for (Thread worker : workers) {
+                try {
+                    worker.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            report.finish(dispatchEngine.getWaitingCount());
+        } finally {
+            running = false;
+            orderManager.close();
+            fileManager.close();
+            if (temporary) {
+                deleteFolder(directory);
+            }
+        }
+        return report;
+    }
+
+    private List<Shop> createShops(FileManager fileManager, Random random) {
+        for (int i = 0; i < restaurants; i++) {
+            fileManager.addRestaurant("Load Restaurant " + i, "Category " + (i % 5));
+        }
+        List<Shop> shops = new ArrayList<>();
+        for (Restaurant restaurant : fileManager.getAllRestaurants()) {
+            for (int j = 0; j < itemsPerRestaurant; j++) {
+                BigDecimal price = BigDecimal.valueOf(199 + random.nextInt(1800), 2);
+                fileManager.addMenuItem("Item " + j, j == 0 ? "Main" : "Side", price, restaurant.getRestaurantId());
+            }
+            Shop shop = new Shop();
+            for (MenuItem item : fileManager.getMenuItemsForRestaurant(restaurant.getRestaurantId())) {
+                shop.itemIds.add(item.getItemId().toString());
+            }
+            shops.add(shop);
+        }
+        return shops;
+    }
+
+    private void customerLoop(Customer customer, Random random, List<Shop> shops, OrderManager orderManager,
+                              DispatchEngine dispatchEngine, FileManager fileManager, Report report) {
+        long interval = targetRate > 0 ? (long) (customers * 1_000_000_000.0 / targetRate) : 0;
+        long next = System.nanoTime() + (long) (interval * random.nextDouble()); // spread the customers out
+        while (running) {
+            long start;
+            if (interval > 0) {
+                long wait;
+                while (running && (wait = next - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                if (!running) {
+                    return;
+                }
+                start = next; // time from when it was due, so falling behind shows up in the latency
+                next += interval;
+            } else {
+                start = System.nanoTime();
+            }
+
+            Shop shop = shops.get(random.nextInt(shops.size()));
+            int count = 1 + random.nextInt(Math.min(3, shop.itemIds.size()));
+            List<String> items = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                items.add(shop.itemIds.get(random.nextInt(shop.itemIds.size())));
+            }
+            try {
+                OrderPricer.Quote quote = fileManager.getOrderPricer().quote(items);
+                if (!quote.isValid()) {
+                    report.error(report.place, quote.getError());
+                    continue;
+                }
+                OrderManager.Order order = orderManager.place(customer.getId(), quote.getRestaurantId(), items, quote.getTotalCents());
+                customer.addOrder(order.getId());
+                dispatchEngine.submit(order);
+                report.place.latency.record(System.nanoTime() - start);
+            } catch (RuntimeException e) {
+                report.error(report.place, e.toString());
+            }
+        }
+    }
+
+    private void driverLoop(Driver driver, Random random, OrderManager orderManager,
+                            DispatchEngine dispatchEngine, FileManager fileManager, Report report) {
+        while (running) {
+            long start = System.nanoTime();
+            OrderManager.Order order;
+            try {
+                order = dispatchEngine.acceptNextFor(driver);
+            } catch (RuntimeException e) {
+                report.error(report.accept, e.toString());
+                continue;
+            }
+            if (order == null) {
+                report.idlePolls.increment();
+                LockSupport.parkNanos(IDLE_WAIT_NANOS);
+                continue;
+            }
+            report.accept.latency.record(System.nanoTime() - start);
+
+            start = System.nanoTime();
+            try {
+                if (!driver.updateOrderStatus(orderManager, OrderManager.Status.IN_PROGRESS)
+                        || !driver.updateOrderStatus(orderManager, OrderManager.Status.DELIVERED)) {
+                    report.error(report.deliver, "Order " + order.getId() + " couldn't move from " + order.getStatus());
+                } else {
+                    driver.addRating(1 + random.nextInt(5));
+                    report.deliver.latency.record(System.nanoTime() - start);
+                }
+            } catch (RuntimeException e) {
+                report.error(report.deliver, e.toString());
+            }
+            // Back on shift either way
+            driver.setCurrentOrder(null);
+            driver.setAvailable(true);
+            fileManager.updateDriver(driver.getId(), true, driver.getAvgRating());
+            dispatchEngine.driverAvailable(driver);
+        }
+    }
+
+    static void deleteFolder(Path directory) {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            System.err.println("Couldn't delete " + directory + ": " + e.getMessage());
+        }
+    }
+
+    // ==================== Settings ====================
+    public int getCustomers() {
+        return customers;
+    }
+
+    /**
+     * Sets how many customer threads place orders
+     * @param customers at least 1
+     */
+    public void setCustomers(int customers) {
+        if (customers < 1) {
+            throw new IllegalArgumentException("Need at least one customer");
+        }
+        this.customers = customers;
+    }
+
+    public int getDrivers() {
+        return drivers;
+    }
+
+    /**
+     * Sets how many driver threads take and deliver orders
+     * @param drivers at least 1
+     */
+    public void setDrivers(int drivers) {
+        if (drivers < 1) {
+            throw new IllegalArgumentException("Need at least one driver");
+        }
+        this.drivers = drivers;
+    }
+
+    public int getRestaurants() {
+        return restaurants;
+    }
+
+    public void setRestaurants(int restaurants) {
+        if (restaurants < 1) {
+            throw new IllegalArgumentException("Need at least one restaurant");
+        }
+        this.restaurants = restaurants;
+    }
+
+    public int getItemsPerRestaurant() {
+        return itemsPerRestaurant;
+    }
+
+    public void setItemsPerRestaurant(int itemsPerRestaurant) {
+        if (itemsPerRestaurant < 1) {
+            throw new IllegalArgumentException("Need at least one item per restaurant");
+        }
+        this.itemsPerRestaurant = itemsPerRestaurant;
+    }
+
+    public double getTargetRate() {
+        return targetRate;
+    }
+
+    /**
+     * Sets the orders per second to aim for, spread over the customers
+     * @param targetRate orders/s, 0 for closed loop (every customer orders again as soon as the last one is in)
+     */
+    public void setTargetRate(double targetRate) {
+        if (targetRate < 0) {
+            throw new IllegalArgumentException("Target rate can't be negative");
+        }
+        this.targetRate = targetRate;
+    }
+
+    public long getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public void setDurationSeconds(long durationSeconds) {
+        if (durationSeconds < 1) {
+            throw new IllegalArgumentException("Duration must be at least a second");
+        }
+        this.durationSeconds = durationSeconds;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public Path getDataDirectory() {
+        return dataDirectory;
+    }
+
+    /**
+     * Sets where the run keeps its data, it has to be empty or missing
+     * @param dataDirectory folder, null for a temp folder that's deleted after
+     */
+    public void setDataDirectory(Path dataDirectory) {
+        this.dataDirectory = dataDirectory;
+    }
+
+    public static void main(String[] args) {
+        LoadGenerator generator = new LoadGenerator();
+        try {
+            for (String arg : args) {
+                int eq = arg.indexOf('=');
+                String name = eq < 0 ? arg : arg.substring(0, eq);
+                String value = eq < 0 ? "" : arg.substring(eq + 1);
+                switch (name) {
+                    case "--customers": generator.setCustomers(Integer.parseInt(value)); break;
+                    case "--drivers": generator.setDrivers(Integer.parseInt(value)); break;
+                    case "--restaurants": generator.setRestaurants(Integer.parseInt(value)); break;
+                    case "--items": generator.setItemsPerRestaurant(Integer.parseInt(value)); break;
+                    case "--rate": generator.setTargetRate(Double.parseDouble(value)); break;
+                    case "--duration": generator.setDurationSeconds(Long.parseLong(value)); break;
+                    case "--seed": generator.setSeed(Long.parseLong(value)); break;
+                    case "--dir": generator.setDataDirectory(Paths.get(value)); break;
+                    default:
+                        System.err.println("Unknown option " + arg);
+                        System.err.println("Options: --customers=N --drivers=N --restaurants=N --items=N --rate=ORDERS_PER_SEC --duration=SECONDS --seed=N --dir=EMPTY_FOLDER");
+                        System.exit(2);
+                }
+            }
+        } catch (IllegalArgumentException e) { // NumberFormatException too
+            System.err.println("Bad option: " + e.getMessage());
+            System.exit(2);
+        }
+
+        MetricsRegistry.getDefault().startExportIfConfigured(); // -Dpasoeats.metricsFile
+        Report report = generator.run();
+        MetricsRegistry.getDefault().stopExport();
+        if (report == null) {
+            System.exit(1);
+        }
+        System.out.print(report);
+    }
+}
@@ -1,7 +1,10 @@
 public class Main {
     public static void main(String[] args) {
-        new FileManager();
-        
+        if (args.length > 0 && args[0].equals("--server")) {
+            // Many users over a local socket instead of one at the keyboard
+            SessionServer.main(java.util.Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         CLI cli = new CLI();
         cli.start();
         
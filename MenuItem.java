@@ -5,7 +5,7 @@ public class MenuItem {
     private UUID itemId;
     private String name;
     private String category;
-    private BigDecimal price;
+    private volatile long priceCents; // see Money
     private UUID restaurantId;
 
     /**
@@ -28,10 +28,22 @@ public class MenuItem {
      * @param restaurantId Restaurant ID this item belongs to
      */
     public MenuItem(UUID itemId, String name, String category, BigDecimal price, UUID restaurantId) {
+        this(itemId, name, category, Money.fromBigDecimal(price), restaurantId);
+    }
+
+    /**
+     * Constructor for loading existing menu item from file with the price already in cents
+     * @param itemId Existing item ID
+     * @param name Menu item name
+     * @param category Menu item category
+     * @param priceCents Menu item price in cents
+     * @param restaurantId Restaurant ID this item belongs to
+     */
+    public MenuItem(UUID itemId, String name, String category, long priceCents, UUID restaurantId) {
         this.itemId = itemId;
         this.name = name;
         this.category = category;
-        this.price = price;
+        this.priceCents = priceCents;
         this.restaurantId = restaurantId;
     }
 
@@ -69,11 +81,19 @@ public class MenuItem {
     }
 
     /**
-     * Gets the price of the menu item
+     * Gets the price of the menu item. Makes a new BigDecimal, use getPriceCents for math.
      * @return price of the menu item
      */
     public BigDecimal getPrice() {
-        return price;
+        return Money.toBigDecimal(priceCents);
+    }
+
+    /**
+     * Gets the price of the menu item in cents
+     * @return price in cents
+     */
+    public long getPriceCents() {
+        return priceCents;
     }
 
     /**
@@ -81,7 +101,15 @@ public class MenuItem {
      * @param price of the menu item
      */
     public void setPrice(BigDecimal price) {
-        this.price = price;
+        this.priceCents = Money.fromBigDecimal(price);
+    }
+
+    /**
+     * Sets the price of the menu item in cents
+     * @param priceCents price in cents
+     */
+    public void setPriceCents(long priceCents) {
+        this.priceCents = priceCents;
     }
 
     /**
@@ -114,6 +142,6 @@ public class MenuItem {
      * @return String
      */
     public String detailsToString() {
-        return String.format("%s - %s (%s)", name, category, price);
+        return String.format("%s - %s (%s)", name, category, Money.format(priceCents));
     }
 }
\ No newline at end of file
@@ -0,0 +1,318 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Answers MenuQuery filters (category, price range, restaurants) from menu items kept sorted by price.
+ * Each category, each restaurant and the whole menu get a price-sorted array built on first use and
+ * dropped when one of their items changes, so a query is a binary search for the price range and a
+ * walk over that slice, never a scan of the catalog. Results come out lazily, a page at a time.
+ *
+ * Like TableSnapshot, change it under FileManager's catalog write lock and query under the read lock.
+ * Pages read from a sorted copy, so they're safe to keep walking after the lock is let go.
+ */
+public class MenuPriceIndex {
+    private static final Comparator<MenuItem> BY_PRICE = Comparator.comparingLong(MenuItem::getPriceCents)
+        .thenComparing(MenuItem::getItemId);
+
+    /**
+     * Items of a bucket sorted by price, prices pulled out for the binary search
+     */
+    private static final class Sorted {
+        private final long[] prices;
+        private final MenuItem[] items;
+
+        Sorted(MenuItem[] items) {
+            this.items = items;
+            this.prices = new long[items.length];
+            for (int i = 0; i < items.length; i++) {
+                prices[i] = items[i].getPriceCents();
+            }
+        }
+
+        /**
+         * First index with a price >= the given one
+         */
+        int lowerBound(long priceCents) {
+            int lo = 0;
+            int hi = prices.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (prices[mid] < priceCents) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        /**
+         * First index with a price > the given one
+         */
+        int upperBound(long priceCents) {
+            int lo = 0;
+            int hi = prices.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (prices[mid] <= priceCents) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+
+    /**
+     * Items of one category, one restaurant or the whole menu, and the sorted copy of them
+     */
+    private static final class Bucket {
+        private final Map<UUID, MenuItem> items = new ConcurrentHashMap<>();
+        private final TableSnapshot<Sorted> sorted = new TableSnapshot<>();
+
+        Sorted sorted() {
+            return sorted.get(() -> {
+                MenuItem[] array = items.values().toArray(new MenuItem[0]);
+                Arrays.sort(array, BY_PRICE);
+                return new Sorted(array);
+            });
+        }
+    }
+
+    /**
+     * Position in one price-sorted slice
+     */
+    private static final class Cursor {
+        private final MenuItem[] items;
+        private final int end;
+        private final int step;
+        private int next;
+
+        Cursor(MenuItem[] items, int from, int to, boolean descending) {
+            this.items = items;
+            this.step = descending ? -1 : 1;
+            this.next = descending ? to - 1 : from;
+            this.end = descending ? from - 1 : to;
+        }
+
+        MenuItem current() {
+            return items[next];
+        }
+    }
+
+    /**
+     * Walks one or more price-sorted slices in price order (merging them if there are several),
+     * skipping whatever the query filters out
+     */
+    private static final class SliceIterator implements Iterator<MenuItem> {
+        private final PriorityQueue<Cursor> cursors;
+        private final MenuQuery query;
+        private MenuItem pending;
+
+        SliceIterator(List<Cursor> slices, MenuQuery query) {
+            Comparator<Cursor> order = (a, b) -> BY_PRICE.compare(a.current(), b.current());
+            this.cursors = new PriorityQueue<>(Math.max(1, slices.size()), query.isDescending() ? order.reversed() : order);
+            this.query = query;
+            for (Cursor cursor : slices) {
+                if (cursor.next != cursor.end) {
+                    cursors.add(cursor);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (pending == null && !cursors.isEmpty()) {
+                Cursor cursor = cursors.poll();
+                MenuItem item = cursor.current();
+                cursor.next += cursor.step;
+                if (cursor.next != cursor.end) {
+                    cursors.add(cursor);
+                }
+                if (query.matches(item)) {
+                    pending = item;
+                }
+            }
+            return pending != null;
+        }
+
+        @Override
+        public MenuItem next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            MenuItem item = pending;
+            pending = null;
+            return item;
+        }
+    }
+
+    /**
+     * Results of a query, one page per next()
+     */
+    public static final class Pages implements Iterator<List<MenuItem>> {
+        private final Iterator<MenuItem> items;
+        private final int pageSize;
+
+        private Pages(Iterator<MenuItem> items, int pageSize) {
+            this.items = items;
+            this.pageSize = pageSize;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return items.hasNext();
+        }
+
+        /**
+         * Gets the next page, only the items on it get looked at
+         * @return read-only list of up to pageSize items
+         */
+        @Override
+        public List<MenuItem> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            List<MenuItem> page = new ArrayList<>(pageSize);
+            while (page.size() < pageSize && items.hasNext()) {
+                page.add(items.next());
+            }
+            return Collections.unmodifiableList(page);
+        }
+
+        /**
+         * Skips ahead, handy for jumping to page n
+         * @param pages how many pages to throw away
+         * @return this
+         */
+        public Pages skip(int pages) {
+            for (long i = 0; i < (long) pages * pageSize && items.hasNext(); i++) {
+                items.next();
+            }
+            return this;
+        }
+    }
+
+    private final Map<String, Bucket> byCategory = new ConcurrentHashMap<>();
+    private final Bucket all = new Bucket();
+    private final Map<UUID, Bucket> byRestaurant = new ConcurrentHashMap<>();
+
+    /**
+     * Adds an item, call it again after the item changes (after remove)
+     * @param item MenuItem to index
+     */
+    public void put(MenuItem item) {
+        Bucket bucket = bucketFor(item.getCategory(), true);
+        bucket.items.put(item.getItemId(), item);
+        bucket.sorted.invalidate();
+        all.items.put(item.getItemId(), item);
+        all.sorted.invalidate();
+        Bucket restaurant = byRestaurant.computeIfAbsent(item.getRestaurantId(), id -> new Bucket());
+        restaurant.items.put(item.getItemId(), item);
+        restaurant.sorted.invalidate();
+    }
+
+    /**
+     * Drops an item, call it before changing the item so it leaves its old category
+     * @param item MenuItem to drop
+     */
+    public void remove(MenuItem item) {
+        Bucket bucket = bucketFor(item.getCategory(), false);
+        if (bucket != null && bucket.items.remove(item.getItemId()) != null) {
+            bucket.sorted.invalidate();
+            if (bucket.items.isEmpty()) {
+                byCategory.remove(MenuQuery.normalizeCategory(item.getCategory()));
+            }
+        }
+        if (all.items.remove(item.getItemId()) != null) {
+            all.sorted.invalidate();
+        }
+        Bucket restaurant = byRestaurant.get(item.getRestaurantId());
+        if (restaurant != null && restaurant.items.remove(item.getItemId()) != null) {
+            restaurant.sorted.invalidate();
+            if (restaurant.items.isEmpty()) {
+                byRestaurant.remove(item.getRestaurantId());
+            }
+        }
+    }
+
+    /**
+     * Empties the index
+     */
+    public void clear() {
+        byCategory.clear();
+        all.items.clear();
+        all.sorted.invalidate();
+        byRestaurant.clear();
+    }
+
+    /**
+     * Gets every category that has items, lowercase
+     * @return sorted list
+     */
+    public List<String> getCategories() {
+        List<String> categories = new ArrayList<>(byCategory.keySet());
+        Collections.sort(categories);
+        return categories;
+    }
+
+    /**
+     * Runs a query
+     * @param query filters, sort order and page size
+     * @return lazy pages of matching items, sorted by price
+     */
+    public Pages query(MenuQuery query) {
+        return new Pages(iterator(query), query.getPageSize());
+    }
+
+    /**
+     * Runs a query item by item
+     * @param query filters and sort order
+     * @return lazy iterator of matching items, sorted by price
+     */
+    public Iterator<MenuItem> iterator(MenuQuery query) {
+        Bucket bucket = query.getCategory() == null ? all : byCategory.get(query.getCategory());
+        if (bucket == null) {
+            return Collections.emptyIterator();
+        }
+        Sorted sorted = bucket.sorted();
+        int from = sorted.lowerBound(query.getMinPriceCents());
+        int to = sorted.upperBound(query.getMaxPriceCents());
+        if (query.getRestaurantIds() != null) {
+            // Merging the restaurants' own price slices beats filtering the category's slice
+            // when those restaurants have fewer items in the price range than the category does
+            List<Cursor> slices = new ArrayList<>();
+            long inRange = 0;
+            for (UUID restaurantId : query.getRestaurantIds()) {
+                Bucket restaurant = byRestaurant.get(restaurantId);
+                if (restaurant == null) {
+                    continue;
+                }
+                Sorted own = restaurant.sorted();
+                int ownFrom = own.lowerBound(query.getMinPriceCents());
+                int ownTo = own.upperBound(query.getMaxPriceCents());
+                slices.add(new Cursor(own.items, ownFrom, ownTo, query.isDescending()));
+                inRange += ownTo - ownFrom;
+            }
+            if (inRange < to - from) {
+                return new SliceIterator(slices, query);
+            }
+        }
+        return new SliceIterator(Collections.singletonList(new Cursor(sorted.items, from, to, query.isDescending())), query);
+    }
+
+    private Bucket bucketFor(String category, boolean create) {
+        String key = MenuQuery.normalizeCategory(category);
+        return create ? byCategory.computeIfAbsent(key, k -> new Bucket()) : byCategory.get(key);
+    }
+}
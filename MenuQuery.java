@@ -0,0 +1,145 @@
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Filters for browsing menu items across restaurants, like "drinks under $3 from these places".
+ * Everything left unset matches anything. Results come back sorted by price (see MenuPriceIndex).
+ */
+public class MenuQuery {
+    private String category;
+    private long minPriceCents = 0;
+    private long maxPriceCents = Long.MAX_VALUE;
+    private Set<UUID> restaurantIds;
+    private boolean descending;
+    private int pageSize = 20;
+
+    /**
+     * Gets the category to match, lowercase
+     * @return category, null for any
+     */
+    public String getCategory() {
+        return category;
+    }
+
+    /**
+     * Sets the category to match (not case sensitive)
+     * @param category like "Drinks", null or blank for any
+     */
+    public void setCategory(String category) {
+        this.category = category == null || category.trim().isEmpty() ? null : normalizeCategory(category);
+    }
+
+    /**
+     * Gets the lowest price to match
+     * @return cents
+     */
+    public long getMinPriceCents() {
+        return minPriceCents;
+    }
+
+    /**
+     * Gets the highest price to match
+     * @return cents
+     */
+    public long getMaxPriceCents() {
+        return maxPriceCents;
+    }
+
+    /**
+     * Sets the price range, both ends included
+     * @param minPrice lowest price, null for no lower bound
+     * @param maxPrice highest price, null for no upper bound
+     */
+    public void setPriceRange(BigDecimal minPrice, BigDecimal maxPrice) {
+        setPriceRangeCents(minPrice == null ? 0 : Money.fromBigDecimal(minPrice),
+            maxPrice == null ? Long.MAX_VALUE : Money.fromBigDecimal(maxPrice));
+    }
+
+    /**
+     * Sets the price range in cents, both ends included
+     * @param minPriceCents lowest price
+     * @param maxPriceCents highest price
+     */
+    public void setPriceRangeCents(long minPriceCents, long maxPriceCents) {
+        if (minPriceCents > maxPriceCents) {
+            throw new IllegalArgumentException("Minimum price is above the maximum price");
+        }
+        this.minPriceCents = minPriceCents;
+        this.maxPriceCents = maxPriceCents;
+    }
+
+    /**
+     * Gets the restaurants to match
+     * @return read-only set, null for any
+     */
+    public Set<UUID> getRestaurantIds() {
+        return restaurantIds;
+    }
+
+    /**
+     * Sets the restaurants to match
+     * @param restaurantIds ids to keep, null for any
+     */
+    public void setRestaurantIds(Set<UUID> restaurantIds) {
+        this.restaurantIds = restaurantIds == null ? null : Collections.unmodifiableSet(new HashSet<>(restaurantIds));
+    }
+
+    /**
+     * Checks if results go most expensive first
+     * @return boolean
+     */
+    public boolean isDescending() {
+        return descending;
+    }
+
+    /**
+     * Sets if results go most expensive first (cheapest first by default)
+     * @param descending boolean
+     */
+    public void setDescending(boolean descending) {
+        this.descending = descending;
+    }
+
+    /**
+     * Gets how many items come back per page
+     * @return int
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Sets how many items come back per page
+     * @param pageSize must be positive
+     */
+    public void setPageSize(int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Checks an item against every filter
+     * @param item MenuItem to check
+     * @return true if it matches
+     */
+    public boolean matches(MenuItem item) {
+        return (category == null || (item.getCategory() != null && category.equalsIgnoreCase(item.getCategory().trim())))
+            && item.getPriceCents() >= minPriceCents && item.getPriceCents() <= maxPriceCents
+            && (restaurantIds == null || restaurantIds.contains(item.getRestaurantId()));
+    }
+
+    /**
+     * Categories are compared trimmed and lowercase
+     * @param category as stored or typed
+     * @return key
+     */
+    public static String normalizeCategory(String category) {
+        return category == null ? "" : category.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,204 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * In-process counters, gauges and latency histograms.
+ * Components look their metrics up once and keep them in fields, so recording is one LongAdder add
+ * or one histogram bucket increment, no locks and no map lookups on the hot path.
+ * Names are dotted, like "orders.place". Set -Dpasoeats.metricsFile=metrics.txt to have the
+ * numbers written out every few seconds (-Dpasoeats.metricsIntervalSeconds, default 10).
+ */
+public class MetricsRegistry {
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+    private static final double[] PERCENTILES = {50, 99, 99.9};
+    private static final String[] PERCENTILE_NAMES = {"p50_ms", "p99_ms", "p999_ms"};
+
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final Object exportLock = new Object();
+    private ScheduledExecutorService exporter;
+    private Path exportFile;
+
+    /**
+     * Gets the registry the app records into
+     * @return shared MetricsRegistry
+     */
+    public static MetricsRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Gets (or makes) a counter
+     * @param name metric name
+     * @return LongAdder to increment
+     */
+    public LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, n -> new LongAdder());
+    }
+
+    /**
+     * Gets (or makes) a latency histogram
+     * @param name metric name
+     * @return LatencyHistogram to record nanoseconds into
+     */
+    public LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, n -> new LatencyHistogram());
+    }
+
+    /**
+     * Registers a value that's read when a snapshot is taken, like a queue size.
+     * Registering the same name again replaces the old one (the newest instance wins).
+     * @param name metric name
+     * @param value gives the current value, it should be cheap
+     */
+    public void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * Reads every metric. Histograms come out as name.count, name.mean_ms, name.p50_ms,
+     * name.p99_ms, name.p999_ms and name.max_ms.
+     * @return read-only map sorted by name
+     */
+    public SortedMap<String, Number> snapshot() {
+        SortedMap<String, Number> values = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+            values.put(entry.getKey(), entry.getValue().sum());
+        }
+        for (Map.Entry<String, LongSupplier> entry : gauges.entrySet()) {
+            try {
+                values.put(entry.getKey(), entry.getValue().getAsLong());
+            } catch (RuntimeException e) {
+                System.err.println("Error reading gauge " + entry.getKey() + ": " + e.getMessage());
+            }
+        }
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            String name = entry.getKey();
+            LatencyHistogram histogram = entry.getValue();
+            values.put(name + ".count", histogram.getCount());
+            values.put(name + ".mean_ms", histogram.getMeanNanos() / 1_000_000.0);
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                values.put(name + "." + PERCENTILE_NAMES[i], histogram.getPercentileMillis(PERCENTILES[i]));
+            }
+            values.put(name + ".max_ms", histogram.getMaxNanos() / 1_000_000.0);
+        }
+        return Collections.unmodifiableSortedMap(values);
+    }
+
+    /**
+     * Formats a snapshot as "name value" lines
+     * @return String
+     */
+    public String dump() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("# PasoEats metrics ").append(OrderManager.formatTime(System.currentTimeMillis())).append(System.lineSeparator());
+        for (Map.Entry<String, Number> entry : snapshot().entrySet()) {
+            Number value = entry.getValue();
+            sb.append(entry.getKey()).append(' ');
+            if (value instanceof Double) {
+                sb.append(String.format("%.3f", value.doubleValue()));
+            } else {
+                sb.append(value);
+            }
+            sb.append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes a dump to a file, replacing it in one step so readers never see half a file
+     * @param file where to write
+     * @return true if it was written
+     */
+    public boolean writeTo(Path file) {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.write(temp, dump().getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error writing metrics to " + file + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Starts writing a dump to a file every few seconds, on a background thread
+     * @param file where to write
+     * @param intervalSeconds seconds between writes
+     */
+    public void startExport(Path file, long intervalSeconds) {
+        if (intervalSeconds < 1) {
+            throw new IllegalArgumentException("Export interval must be at least a second");
+        }
+        synchronized (exportLock) {
+            if (exporter != null) {
+                return;
+            }
+            exporter = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "metrics-export");
+                thread.setDaemon(true);
+                return thread;
+            });
+            exporter.scheduleWithFixedDelay(() -> writeTo(file), intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+            exportFile = file;
+        }
+    }
+
+    /**
+     * Starts the export if -Dpasoeats.metricsFile is set, does nothing otherwise
+     */
+    public void startExportIfConfigured() {
+        String file = System.getProperty("pasoeats.metricsFile");
+        if (file == null || file.trim().isEmpty()) {
+            return;
+        }
+        long interval = Long.getLong("pasoeats.metricsIntervalSeconds", 10);
+        startExport(Paths.get(file.trim()), Math.max(1, interval));
+    }
+
+    /**
+     * Stops the periodic export and writes the file one last time
+     */
+    public void stopExport() {
+        ScheduledExecutorService running;
+        Path file;
+        synchronized (exportLock) {
+            running = exporter;
+            file = exportFile;
+            exporter = null;
+            exportFile = null;
+        }
+        if (running != null) {
+            running.shutdownNow();
+            writeTo(file);
+        }
+    }
+
+    /**
+     * Zeroes every counter and histogram, gauges stay registered
+     */
+    public void reset() {
+        for (LongAdder counter : counters.values()) {
+            counter.reset();
+        }
+        for (LatencyHistogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+    }
+}
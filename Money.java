@@ -0,0 +1,100 @@
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Prices are kept as a long number of cents everywhere (menu items, order totals, data files).
+ * Adding longs is exact and doesn't allocate, BigDecimal is only made when someone asks for one.
+ */
+public final class Money {
+    private Money() {}
+
+    /**
+     * Converts a BigDecimal price to cents, rounding half up past two decimals
+     * @param amount price like 12.99
+     * @return cents
+     */
+    public static long fromBigDecimal(BigDecimal amount) {
+        if (amount == null) {
+            throw new IllegalArgumentException("Price can't be null");
+        }
+        return amount.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Converts cents back to a BigDecimal with two decimals
+     * @param cents amount in cents
+     * @return BigDecimal
+     */
+    public static BigDecimal toBigDecimal(long cents) {
+        return BigDecimal.valueOf(cents, 2);
+    }
+
+    /**
+     * Reads a price from a data file ("12.48", "3", "2.5", "-1.05") without going through double
+     * @param text price text
+     * @return cents
+     * @throws NumberFormatException if it isn't a price
+     */
+    public static long parse(String text) {
+        String s = text.trim();
+        int i = 0;
+        boolean negative = false;
+        if (s.startsWith("-")) {
+            negative = true;
+            i++;
+        }
+        long cents = 0;
+        int decimals = -1; // -1 until we pass the dot
+        boolean digits = false;
+        for (; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '.' && decimals < 0) {
+                decimals = 0;
+            } else if (c >= '0' && c <= '9') {
+                if (decimals >= 2) {
+                    // More than two decimals, round on the third and ignore the rest
+                    if (decimals == 2 && c >= '5') {
+                        cents++;
+                    }
+                    decimals++;
+                    continue;
+                }
+                cents = Math.addExact(Math.multiplyExact(cents, 10), c - '0');
+                digits = true;
+                if (decimals >= 0) {
+                    decimals++;
+                }
+            } else {
+                throw new NumberFormatException("Not a price: " + text);
+            }
+        }
+        if (!digits) {
+            throw new NumberFormatException("Not a price: " + text);
+        }
+        for (int d = Math.max(decimals, 0); d < 2; d++) {
+            cents = Math.multiplyExact(cents, 10);
+        }
+        return negative ? -cents : cents;
+    }
+
+    /**
+     * Formats cents as a plain price for data files and display ("12.48")
+     * @param cents amount in cents
+     * @return String
+     */
+    public static String format(long cents) {
+        long abs = Math.abs(cents);
+        long fraction = abs % 100;
+        return (cents < 0 ? "-" : "") + (abs / 100) + (fraction < 10 ? ".0" : ".") + fraction;
+    }
+
+    /**
+     * Adds two amounts, failing loudly instead of wrapping around
+     * @param a cents
+     * @param b cents
+     * @return a + b
+     */
+    public static long add(long a, long b) {
+        return Math.addExact(a, b);
+    }
+}
@@ -0,0 +1,211 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Where delivered orders go once nobody needs them live anymore (see OrderManager.archiveDelivered).
+ *
+ * The orders sit in their own pair of segment files in the OrderSegmentStore format
+ * (orders.archive.seg + orders.archive.items), read through a MappedByteBuffer, so an archived
+ * order costs the heap about 24 bytes for its id -> slot entry instead of a few hundred for the
+ * live objects. Order history needs "every archived order of this customer", so the first such
+ * lookup indexes customers and drivers to their slots (an int per order) and keeps that up to date.
+ */
+public class OrderArchive {
+    /**
+     * Slots of one customer's or driver's archived orders, in the order they were archived,
+     * and which of them was placed last
+     */
+    private static final class Slots {
+        private int[] slots = new int[4];
+        private int size;
+        private int newest = -1;
+        private long newestCreatedAt = Long.MIN_VALUE;
+
+        void add(int slot, long createdAt) {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+            }
+            slots[size++] = slot;
+            if (createdAt > newestCreatedAt) {
+                newest = slot;
+                newestCreatedAt = createdAt;
+            }
+        }
+    }
+
+    private final OrderSegmentStore store;
+    private Map<UUID, Slots> byCustomer; // null until someone asks for a history
+    private Map<UUID, Slots> byDriver;
+
+    /**
+     * Opens (or creates) the archive segments
+     * @param segmentPath fixed-width order records
+     * @param itemsPath item id side segment
+     * @throws IOException if the files can't be opened or aren't segment files
+     */
+    public OrderArchive(Path segmentPath, Path itemsPath) throws IOException {
+        this.store = new OrderSegmentStore(segmentPath, itemsPath);
+    }
+
+    /**
+     * Gets how many orders are archived
+     * @return order count
+     */
+    public int size() {
+        return store.size();
+    }
+
+    /**
+     * Checks if an order is archived
+     * @param orderId UUID of the order
+     * @return true if found
+     */
+    public boolean contains(UUID orderId) {
+        return store.contains(orderId);
+    }
+
+    /**
+     * Decodes one archived order
+     * @param orderId UUID of the order
+     * @return OrderData if found, null otherwise
+     */
+    public FileManager.OrderData get(UUID orderId) {
+        return store.get(orderId);
+    }
+
+    /**
+     * Archives an order. It can be read right away but only survives a restart after force.
+     * @param order order to keep
+     * @return true if stored, false if it's already archived or the write failed
+     */
+    public synchronized boolean add(FileManager.OrderData order) {
+        if (!store.append(order, false)) {
+            return false;
+        }
+        if (byCustomer != null) {
+            index(store.slotOf(order.getOrderId()), order);
+        }
+        return true;
+    }
+
+    /**
+     * Forces every added order to disk, in one go
+     */
+    public void force() {
+        store.force();
+    }
+
+    /**
+     * Gets a customer's archived orders
+     * @param customerId UUID of the customer
+     * @return decoded orders in the order they were archived, empty if none
+     */
+    public List<FileManager.OrderData> getForCustomer(UUID customerId) {
+        return decode(customerId, true);
+    }
+
+    /**
+     * Gets a driver's archived orders
+     * @param driverId UUID of the driver
+     * @return decoded orders in the order they were archived, empty if none
+     */
+    public List<FileManager.OrderData> getForDriver(UUID driverId) {
+        return decode(driverId, false);
+    }
+
+    /**
+     * Gets a customer's most recently placed archived order, if it's newer than what the caller has.
+     * Only that one order gets decoded.
+     * @param customerId UUID of the customer
+     * @param newerThan creation time (epoch millis) it has to beat, Long.MIN_VALUE for any
+     * @return OrderData, null if they have no archived order placed after newerThan
+     */
+    public FileManager.OrderData getNewestForCustomer(UUID customerId, long newerThan) {
+        if (customerId == null) {
+            return null;
+        }
+        int slot;
+        synchronized (this) {
+            if (byCustomer == null) {
+                buildIndexes();
+            }
+            Slots found = byCustomer.get(customerId);
+            if (found == null || found.newestCreatedAt <= newerThan) {
+                return null;
+            }
+            slot = found.newest;
+        }
+        return store.getAt(slot);
+    }
+
+    /**
+     * Read-only map view over the archive, entries are decoded while iterating
+     * @return Map of orders by UUID
+     */
+    public Map<UUID, FileManager.OrderData> asMap() {
+        return store.asMap();
+    }
+
+    /**
+     * Drops every archived order
+     */
+    public synchronized void clear() {
+        store.clear();
+        byCustomer = null;
+        byDriver = null;
+    }
+
+    /**
+     * Flushes and closes the segments
+     */
+    public void close() {
+        store.close();
+    }
+
+    private List<FileManager.OrderData> decode(UUID userId, boolean customer) {
+        if (userId == null) {
+            return Collections.emptyList();
+        }
+        int[] slots;
+        int size;
+        synchronized (this) {
+            if (byCustomer == null) {
+                buildIndexes();
+            }
+            Slots found = (customer ? byCustomer : byDriver).get(userId);
+            if (found == null) {
+                return Collections.emptyList();
+            }
+            slots = found.slots;
+            size = found.size; // slots only ever get added past size, so this prefix stays good
+        }
+        List<FileManager.OrderData> orders = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            FileManager.OrderData order = store.getAt(slots[i]);
+            if (order != null) {
+                orders.add(order);
+            }
+        }
+        return orders;
+    }
+
+    private void buildIndexes() {
+        byCustomer = new HashMap<>();
+        byDriver = new HashMap<>();
+        int end = store.slotCount();
+        for (int slot = 0; slot < end; slot++) {
+            FileManager.OrderData order = store.getAt(slot);
+            if (order != null) {
+                index(slot, order);
+            }
+        }
+    }
+
+    private void index(int slot, FileManager.OrderData order) {
+        byCustomer.computeIfAbsent(order.getCustomerId(), id -> new Slots()).add(slot, order.getCreatedAtMillis());
+        if (order.getDriverId() != null) {
+            byDriver.computeIfAbsent(order.getDriverId(), id -> new Slots()).add(slot, order.getCreatedAtMillis());
+        }
+    }
+}
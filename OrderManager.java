@@ -1,31 +1,107 @@
-import java.util.ArrayDeque;
-import java.util.Date;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 
-public class OrderManager {
-    public enum Status { PLACED, ACCEPTED, IN_PROGRESS, DELIVERED }
+public final class OrderManager {
+    /**
+     * Order lifecycle: PLACED -> ACCEPTED -> IN_PROGRESS -> DELIVERED, and an order can be
+     * CANCELLED until it's on the road. DELIVERED and CANCELLED are final.
+     */
+    public enum Status {
+        PLACED, ACCEPTED, IN_PROGRESS, DELIVERED, CANCELLED;
+
+        /**
+         * Checks if an order in this status may move to next
+         * @param next Status to move to
+         * @return true if it's a legal transition
+         */
+        public boolean canMoveTo(Status next) {
+            switch (this) {
+                case PLACED:
+                    return next == ACCEPTED || next == CANCELLED;
+                case ACCEPTED:
+                    return next == IN_PROGRESS || next == CANCELLED;
+                case IN_PROGRESS:
+                    return next == DELIVERED;
+                default:
+                    return false; // DELIVERED and CANCELLED are final
+            }
+        }
+
+        /**
+         * Checks if nothing can happen to the order anymore
+         * @return boolean
+         */
+        public boolean isFinal() {
+            return this == DELIVERED || this == CANCELLED;
+        }
+    }
+
+    /**
+     * Marks a time that isn't known, like a status the order never reached
+     */
+    public static final long NO_TIME = Long.MIN_VALUE;
+
+    // Times are kept as epoch millis and only formatted for display. DateTimeFormatter is immutable, so one copy serves every thread.
+    private static final DateTimeFormatter DISPLAY_FORMAT = DateTimeFormatter.ofPattern("MM/dd/yyyy hh:mm a", Locale.US);
+    private static final DateTimeFormatter LEGACY_FORMAT = DateTimeFormatter.ofPattern("M/d/yyyy h:mm a", Locale.US);
 
     public static final class Order { // Nested class
         private UUID id;
         private UUID customerId;
+        private UUID restaurantId;
         private List<String> items;
-        private Status status;
-        private UUID assignedDriverId;
-        private String createdAt;
-        private double totalPrice;
+        private final AtomicReference<Status> status = new AtomicReference<>(Status.PLACED); // only changed by CAS, see moveTo
+        private volatile UUID assignedDriverId;
+        private long createdAtMillis; // wall clock, for showing and saving
+        private long createdAtNanos; // monotonic, for measuring
+        private final AtomicLongArray statusNanos = new AtomicLongArray(Status.values().length); // 0 = never reached
+        private long totalCents;
+        private long sequence; // placement order, set by OrderManager.place
 
         public Order() {}
-        public Order(UUID id, UUID customerId, List<String> items, double totalPrice) {
+        public Order(UUID id, UUID customerId, List<String> items, long totalCents) {
+            this(id, customerId, null, items, totalCents);
+        }
+        public Order(UUID id, UUID customerId, UUID restaurantId, List<String> items, long totalCents) {
             this.id = id;
             this.customerId = customerId;
+            this.restaurantId = restaurantId;
             this.items = items;
-            this.status = Status.PLACED;
             this.assignedDriverId = null;
-            this.createdAt = new java.text.SimpleDateFormat("MM/dd/yyyy hh:mm a").format(new Date());
-            this.totalPrice = totalPrice;
+            this.createdAtMillis = System.currentTimeMillis();
+            this.createdAtNanos = System.nanoTime();
+            this.statusNanos.set(Status.PLACED.ordinal(), createdAtNanos);
+            this.totalCents = totalCents;
         }
 
         public UUID getId() { 
@@ -36,28 +112,124 @@ public class OrderManager {
             return this.customerId;
         }
 
+        public UUID getRestaurantId() {
+            return this.restaurantId;
+        }
+
         public List<String> getItems() { 
             return this.items;
         }
 
         public Status getStatus() { 
-            return this.status;
+            return this.status.get();
         }
 
         public UUID getAssignedDriverId() { 
             return this.assignedDriverId;
         }
 
+        /**
+         * Gets when the order was placed, formatted for showing to people
+         * @return String like 10/28/2025 01:15 PM
+         */
         public String getCreatedAt() { 
-            return this.createdAt;
+            return formatTime(this.createdAtMillis);
+        }
+
+        /**
+         * Gets when the order was placed, use this for sorting and saving
+         * @return epoch millis
+         */
+        public long getCreatedAtMillis() {
+            return this.createdAtMillis;
+        }
+
+        /**
+         * Gets System.nanoTime when the order was placed, only good for measuring durations
+         * @return long
+         */
+        public long getCreatedAtNanos() {
+            return this.createdAtNanos;
+        }
+
+        /**
+         * Gets when the order first reached a status
+         * @param status Status to check
+         * @return epoch millis, or NO_TIME if it never got there
+         */
+        public long getStatusTimeMillis(Status status) {
+            long nanos = statusNanos.get(status.ordinal());
+            if (nanos == 0) {
+                return NO_TIME;
+            }
+            return createdAtMillis + (nanos - createdAtNanos) / 1_000_000; // derived from nanos so the order can't go backwards
+        }
+
+        /**
+         * Gets how long the order took to go from one status to another
+         * @param from earlier Status
+         * @param to later Status
+         * @return nanoseconds, or -1 if it hasn't reached both
+         */
+        public long getNanosBetween(Status from, Status to) {
+            long start = statusNanos.get(from.ordinal());
+            long end = statusNanos.get(to.ordinal());
+            return start == 0 || end == 0 ? -1 : end - start;
         }
         
-        public double getTotalPrice() {
-            return this.totalPrice;
+        /**
+         * Gets the order total, makes a new BigDecimal so use getTotalCents for math
+         * @return total price
+         */
+        public BigDecimal getTotalPrice() {
+            return Money.toBigDecimal(this.totalCents);
+        }
+
+        /**
+         * Gets the order total in cents
+         * @return long
+         */
+        public long getTotalCents() {
+            return this.totalCents;
+        }
+
+        /**
+         * Gets where this order falls in placement order, higher is newer
+         * @return long
+         */
+        public long getSequence() {
+            return this.sequence;
+        }
+
+        /**
+         * Moves the order from one status to another, only if it's still in from
+         * @param from Status the caller saw
+         * @param to Status to move to
+         * @return false if someone else moved it first or the move isn't legal
+         */
+        public boolean transition(Status from, Status to) {
+            if (!from.canMoveTo(to) || !status.compareAndSet(from, to)) {
+                return false;
+            }
+            statusNanos.compareAndSet(to.ordinal(), 0, System.nanoTime()); // first time only
+            return true;
         }
 
-        public void setStatus(Status status) {
-            this.status = status;
+        /**
+         * Moves the order to a status from whatever it's in now, retrying if another thread races us
+         * @param to Status to move to
+         * @return false if the move isn't legal from the current status
+         */
+        public boolean moveTo(Status to) {
+            while (true) {
+                Status current = status.get();
+                if (!current.canMoveTo(to)) {
+                    return false;
+                }
+                if (transition(current, to)) {
+                    return true;
+                }
+            }
         }
 
         public void setAssignedDriverId(UUID driverId) {
@@ -65,59 +237,624 @@ public class OrderManager {
         }
     }
 
-    private final Map<UUID, Order> byId = new HashMap<>(); // Map to store orders by their ID
-    private final ArrayDeque<UUID> intake = new ArrayDeque<>(); // Queue to store orders in the order they were placed
+    // Both are lock-free so customers can place and drivers can accept from any thread at once.
+    // poll() hands each queued id to exactly one caller, that's what stops double assignment.
+    private final Map<UUID, Order> byId = new ConcurrentHashMap<>(); // Map to store orders by their ID
+    private final Queue<UUID> intake = new ConcurrentLinkedQueue<>(); // Queue to store orders in the order they were placed
+
+    // Per-user history keyed by sequence so the newest order is always lastEntry()
+    private final Map<UUID, NavigableMap<Long, Order>> byCustomer = new ConcurrentHashMap<>();
+    private final Map<UUID, NavigableMap<Long, Order>> byDriver = new ConcurrentHashMap<>();
+    private final Map<UUID, Order> activeByDriver = new ConcurrentHashMap<>(); // driver -> order they're working on
+    private final AtomicLong nextSequence = new AtomicLong();
+
+    private final FileManager fileManager; // null keeps orders in memory only
+
+    // Archiving: delivered orders past the grace period move to FileManager's archive and leave every map
+    // above, lookups fall through to the archive, so memory grows with orders in flight, not all history
+    private final boolean archiving;
+    private final ScheduledExecutorService archiver; // null unless archiving
+    private volatile long loadedAtMillis = NO_TIME; // when rehydrate ran, the delivery time of orders delivered before that
+
+    // Metrics (see MetricsRegistry)
+    private final LatencyHistogram placeLatency = MetricsRegistry.getDefault().histogram("orders.place");
+    private final LatencyHistogram acceptLatency = MetricsRegistry.getDefault().histogram("orders.accept");
+    private final LongAdder acceptEmpty = MetricsRegistry.getDefault().counter("orders.accept.empty");
+    private final LatencyHistogram markStatusLatency = MetricsRegistry.getDefault().histogram("orders.markStatus");
+    private final LongAdder markStatusRejected = MetricsRegistry.getDefault().counter("orders.markStatus.rejected");
+    private final LongAdder archived = MetricsRegistry.getDefault().counter("orders.archived");
+
+    /**
+     * Constructor for an in-memory OrderManager, nothing is saved
+     */
+    public OrderManager() {
+        this.fileManager = null;
+        this.archiving = false;
+        this.archiver = null;
+        registerGauges();
+    }
+
+    /**
+     * Constructor for OrderManager backed by the order file.
+     * Loads every saved order back, waiting orders go back in the intake queue and
+     * drivers get their current order back. If the FileManager archives, delivered orders get
+     * swept into the archive in the background once their grace period is over.
+     * @param fileManager FileManager that keeps the orders
+     */
+    public OrderManager(FileManager fileManager) {
+        this.fileManager = fileManager;
+        this.archiving = fileManager.isArchiving();
+        rehydrate();
+        registerGauges();
+        this.archiver = archiving ? startArchiver() : null;
+    }
+
+    /**
+     * Sweeps a few times per grace period, so orders leave memory at most a quarter period late
+     */
+    private ScheduledExecutorService startArchiver() {
+        long period = Math.max(1, Math.min(60, fileManager.getArchiveGraceSeconds() / 4));
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "order-archiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                archiveDelivered();
+            } catch (RuntimeException e) {
+                System.err.println("Error archiving orders: " + e.getMessage());
+            }
+        }, period, period, TimeUnit.SECONDS);
+        return executor;
+    }
 
-    public OrderManager() {}
+    /**
+     * Stops the background archiver, call it before closing the FileManager
+     */
+    public void close() {
+        if (archiver != null) {
+            archiver.shutdownNow();
+        }
+    }
+
+    private void registerGauges() {
+        MetricsRegistry.getDefault().gauge("orders.count", byId::size);
+        MetricsRegistry.getDefault().gauge("orders.active", activeByDriver::size);
+    }
 
-    public Order place(UUID customerId, List<String> items, double totalPrice) {
+    /**
+     * Places a new order and saves it
+     * @param customerId UUID of the customer
+     * @param restaurantId UUID of the restaurant the items are from
+     * @param items item ids
+     * @param totalCents order total in cents
+     * @return Order, call DispatchEngine.submit to get it a driver
+     */
+    public Order place(UUID customerId, UUID restaurantId, List<String> items, long totalCents) {
         if (customerId == null) {
             throw new IllegalArgumentException("Customer ID can't be null");
         }
         if (items == null || items.isEmpty()) {
             throw new IllegalArgumentException("Items list can't be null or empty");
         }
-        Order order = new Order(UUID.randomUUID(), customerId, items, totalPrice);
+        if (fileManager != null && restaurantId == null) {
+            throw new IllegalArgumentException("Restaurant ID can't be null");
+        }
+        long start = System.nanoTime();
+        Order order = new Order(UUID.randomUUID(), customerId, restaurantId, items, totalCents);
+        order.sequence = nextSequence.incrementAndGet();
         byId.put(order.getId(), order);
-        intake.add(order.getId());
+        historyFor(byCustomer, customerId).put(order.sequence, order);
+        if (fileManager != null) {
+            // The row is in FileManager's memory before this returns, the disk write finishes in the background
+            List<UUID> itemIds = new ArrayList<>(items.size());
+            for (String item : items) {
+                itemIds.add(UUID.fromString(item.trim()));
+            }
+            fileManager.appendOrderAsync(order.getId(), customerId, restaurantId, itemIds,
+                order.getStatus().toString(), null, order.getCreatedAtMillis(), totalCents);
+        }
+        placeLatency.record(System.nanoTime() - start);
         return order;
     }
 
+    /**
+     * Puts a placed order in the intake queue for drivers.
+     * DispatchEngine.submit calls this once the order is saved, so a driver can't get it before that.
+     * @param orderId UUID of an order from place
+     */
+    public void enqueue(UUID orderId) {
+        if (orderId == null) {
+            throw new IllegalArgumentException("Order ID can't be null");
+        }
+        intake.add(orderId);
+    }
+
+    /**
+     * Checks if any placed order is still waiting for a driver
+     * @return boolean
+     */
+    public boolean hasPending() {
+        return !intake.isEmpty();
+    }
+
+    /**
+     * Gives the oldest waiting order to a driver. Only memory changes here, so it's cheap enough to
+     * call under DispatchEngine's pair lock. Call persistAccepted after letting go of any lock.
+     * @param driverId UUID of the driver taking it
+     * @return Order they accepted, null if nothing is waiting
+     */
     public Order acceptNext(UUID driverId) {
         if (driverId == null) {
             throw new IllegalArgumentException("Driver ID can't be null");
         }
-        UUID nextOrderId = intake.poll();
-        if (nextOrderId == null) { // No orders check
-            return null;
-        }
-        Order order = byId.get(nextOrderId);
+        long start = System.nanoTime();
+        Order order;
+        do {
+            UUID nextOrderId = intake.poll();
+            if (nextOrderId == null) { // No orders check
+                acceptEmpty.increment();
+                return null;
+            }
+            order = byId.get(nextOrderId);
+        } while (order == null || !order.transition(Status.PLACED, Status.ACCEPTED)); // skip ones cancelled while waiting
         order.setAssignedDriverId(driverId);
-        order.setStatus(Status.ACCEPTED);
+        historyFor(byDriver, driverId).put(order.sequence, order);
+        activeByDriver.put(driverId, order);
+        if (order.getStatus().isFinal()) {
+            // cancelled between the CAS and the put, markStatus may have looked before the entry was there
+            activeByDriver.remove(driverId, order);
+        }
+        acceptLatency.record(System.nanoTime() - start);
         return order;
     }
 
-    public void markStatus(UUID orderId, Status newStatus) {
+    /**
+     * Saves the driver and status of an order from acceptNext
+     * @param order Order acceptNext returned
+     */
+    public void persistAccepted(Order order) {
+        persist(order);
+    }
+
+    /**
+     * Moves an order to a new status if that's a legal step from where it is now.
+     * Use acceptNext to accept, it also assigns the driver.
+     * @param orderId UUID of the order
+     * @param newStatus Status to move to
+     * @return false if the order doesn't exist or the transition isn't allowed (like delivering twice)
+     */
+    public boolean markStatus(UUID orderId, Status newStatus) {
         if (orderId == null) {
             throw new IllegalArgumentException("Order ID can't be null");
         }
         if (newStatus == null) {
             throw new IllegalArgumentException("Status can't be null");
         }
+        if (newStatus == Status.ACCEPTED) {
+            return false; // needs a driver, see acceptNext
+        }
+        long start = System.nanoTime();
         Order order = byId.get(orderId);
-        if (order != null) {
-            order.setStatus(newStatus);
+        if (order == null || !order.moveTo(newStatus)) {
+            markStatusRejected.increment();
+            return false;
+        }
+        if (newStatus.isFinal() && order.getAssignedDriverId() != null) {
+            activeByDriver.remove(order.getAssignedDriverId(), order);
+        }
+        persist(order); // a cancelled order still in the intake queue gets skipped by acceptNext
+        markStatusLatency.record(System.nanoTime() - start);
+        return true;
+    }
+
+    /**
+     * Cancels an order that isn't on the road yet
+     * @param orderId UUID of the order
+     * @return false if it's already in progress, delivered or cancelled
+     */
+    public boolean cancel(UUID orderId) {
+        return markStatus(orderId, Status.CANCELLED);
+    }
+
+    /**
+     * Forgets every order in memory, for after FileManager.reset wiped the order file
+     */
+    public void clear() {
+        intake.clear();
+        byId.clear();
+        byCustomer.clear();
+        byDriver.clear();
+        activeByDriver.clear();
+    }
+
+    /**
+     * Moves delivered orders whose grace period is over into the archive and forgets them here.
+     * Runs on its own when archiving, call it directly to sweep right now.
+     * @return how many orders were archived
+     */
+    public int archiveDelivered() {
+        if (!archiving) {
+            return 0;
+        }
+        long cutoff = System.currentTimeMillis() - fileManager.getArchiveGraceSeconds() * 1000;
+        List<UUID> due = new ArrayList<>();
+        for (Order order : byId.values()) {
+            if (order.getStatus() == Status.DELIVERED) {
+                long deliveredAt = order.getStatusTimeMillis(Status.DELIVERED);
+                if (deliveredAt == NO_TIME) {
+                    deliveredAt = loadedAtMillis; // delivered before a restart, the grace period starts at load
+                }
+                if (deliveredAt <= cutoff) {
+                    due.add(order.getId());
+                }
+            }
         }
+        if (due.isEmpty()) {
+            return 0;
+        }
+        // FileManager skips orders whose DELIVERED isn't saved yet, they go on the next sweep
+        Set<UUID> moved = fileManager.archiveOrders(due);
+        for (UUID orderId : moved) {
+            Order order = byId.remove(orderId);
+            if (order == null) {
+                continue;
+            }
+            // Emptied histories stay, dropping them could race with place() adding to them
+            NavigableMap<Long, Order> history = byCustomer.get(order.getCustomerId());
+            if (history != null) {
+                history.remove(order.sequence, order);
+            }
+            history = order.getAssignedDriverId() == null ? null : byDriver.get(order.getAssignedDriverId());
+            if (history != null) {
+                history.remove(order.sequence, order);
+            }
+        }
+        archived.add(moved.size());
+        return moved.size();
     }
 
+    /**
+     * Saves an order's status and driver. Goes through FileManager.updateOrder, which is a journal record
+     * (or an in-place write in segment mode), not a rewrite of the order file.
+     */
+    private void persist(Order order) {
+        if (fileManager == null) {
+            return;
+        }
+        // Read the state inside the lock so whichever save runs last writes the newest status
+        synchronized (order) {
+            fileManager.updateOrder(order.getId(), order.getStatus().toString(), order.getAssignedDriverId());
+        }
+    }
+
+    /**
+     * Rebuilds the maps, indexes and intake queue from the saved orders, oldest first
+     */
+    private void rehydrate() {
+        List<FileManager.OrderData> saved = new ArrayList<>(fileManager.getAllOrders().values());
+        saved.sort(Comparator.comparingLong(FileManager.OrderData::getCreatedAtMillis));
+        long nowMillis = System.currentTimeMillis();
+        long nowNanos = System.nanoTime();
+        loadedAtMillis = nowMillis;
+        for (FileManager.OrderData data : saved) {
+            Status status;
+            try {
+                status = Status.valueOf(data.getStatus().trim());
+            } catch (IllegalArgumentException | NullPointerException e) {
+                System.err.println("Skipping order " + data.getOrderId() + " with unknown status " + data.getStatus());
+                continue;
+            }
+            Order order = restore(data, status, nowMillis, nowNanos);
+            order.sequence = nextSequence.incrementAndGet();
+
+            byId.put(order.getId(), order);
+            historyFor(byCustomer, order.getCustomerId()).put(order.sequence, order);
+            Customer customer = fileManager.getCustomer(order.getCustomerId());
+            if (customer != null) {
+                customer.addOrder(order.getId());
+            }
+            UUID driverId = order.getAssignedDriverId();
+            if (status == Status.PLACED) {
+                intake.add(order.getId());
+            } else if (driverId != null) {
+                historyFor(byDriver, driverId).put(order.sequence, order);
+                Driver driver = fileManager.getDriver(driverId);
+                if (driver != null) {
+                    driver.addOrder(order.getId());
+                }
+                if (!status.isFinal()) {
+                    activeByDriver.put(driverId, order);
+                    if (driver != null) {
+                        driver.setCurrentOrder(order.getId());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets an order. Archived orders come back as a fresh copy (sequence 0) each call,
+     * they're DELIVERED so nothing can move them anyway.
+     * @param orderId UUID of the order
+     * @return Order or null if there's no such order
+     */
     public Order get(UUID orderId) {
         if (orderId == null) {
             throw new IllegalArgumentException("Order ID can't be null");
         }
-        return byId.get(orderId);
+        Order order = byId.get(orderId);
+        if (order == null && archiving) {
+            return restoreArchived(fileManager.getArchivedOrder(orderId));
+        }
+        return order;
     }
 
+    /**
+     * Gets every order. When archiving, it's a read-only view over the live orders and then the
+     * archived ones, decoded as you iterate.
+     * @return Map of orders by UUID
+     */
     public Map<UUID, Order> getAllOrders(){
-        return byId;
+        if (!archiving) {
+            return byId;
+        }
+        return new AbstractMap<UUID, Order>() {
+            @Override
+            public int size() {
+                return countAllOrders();
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return key instanceof UUID && OrderManager.this.get((UUID) key) != null;
+            }
+
+            @Override
+            public Order get(Object key) {
+                return key instanceof UUID ? OrderManager.this.get((UUID) key) : null;
+            }
+
+            @Override
+            public Set<Map.Entry<UUID, Order>> entrySet() {
+                return new AbstractSet<Map.Entry<UUID, Order>>() {
+                    @Override
+                    public int size() {
+                        return countAllOrders();
+                    }
+
+                    @Override
+                    public Iterator<Map.Entry<UUID, Order>> iterator() {
+                        Iterator<Order> live = byId.values().iterator();
+                        Iterator<FileManager.OrderData> saved = fileManager.getArchivedOrders().values().iterator();
+                        return new Iterator<Map.Entry<UUID, Order>>() {
+                            private Order pending;
+
+                            @Override
+                            public boolean hasNext() {
+                                if (pending == null && live.hasNext()) {
+                                    pending = live.next();
+                                }
+                                while (pending == null && saved.hasNext()) {
+                                    FileManager.OrderData data = saved.next();
+                                    if (!byId.containsKey(data.getOrderId())) { // archived but not evicted yet, already seen
+                                        pending = restoreArchived(data);
+                                    }
+                                }
+                                return pending != null;
+                            }
+
+                            @Override
+                            public Map.Entry<UUID, Order> next() {
+                                if (!hasNext()) {
+                                    throw new NoSuchElementException();
+                                }
+                                Order order = pending;
+                                pending = null;
+                                return new AbstractMap.SimpleImmutableEntry<>(order.getId(), order);
+                            }
+                        };
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Counts orders the way getAllOrders iterates them: an order archived but not evicted
+     * yet is in both places and only counts once. Only delivered orders can be archived.
+     */
+    private int countAllOrders() {
+        int both = 0;
+        for (Order order : byId.values()) {
+            if (order.getStatus() == Status.DELIVERED && fileManager.isArchived(order.getId())) {
+                both++;
+            }
+        }
+        return byId.size() + fileManager.getArchivedOrders().size() - both;
+    }
+
+    /**
+     * Gets a customer's orders, oldest first
+     * @param customerId UUID of the customer
+     * @return read-only view, or a read-only copy if some of their orders are archived, empty if they never ordered
+     */
+    public Collection<Order> getOrdersForCustomer(UUID customerId) {
+        if (archiving && customerId != null) {
+            return withArchived(historyView(byCustomer, customerId), fileManager.getArchivedOrdersForCustomer(customerId));
+        }
+        return historyView(byCustomer, customerId);
+    }
+
+    /**
+     * Gets a driver's accepted orders, oldest first
+     * @param driverId UUID of the driver
+     * @return read-only view, or a read-only copy if some of their orders are archived, empty if they never took one
+     */
+    public Collection<Order> getOrdersForDriver(UUID driverId) {
+        if (archiving && driverId != null) {
+            return withArchived(historyView(byDriver, driverId), fileManager.getArchivedOrdersForDriver(driverId));
+        }
+        return historyView(byDriver, driverId);
+    }
+
+    /**
+     * Gets the newest order a customer placed, O(log n) in their own history
+     * (plus a pass over their archived orders when archiving)
+     * @param customerId UUID of the customer
+     * @return Order or null if none
+     */
+    public Order getLatestOrderForCustomer(UUID customerId) {
+        NavigableMap<Long, Order> history = customerId == null ? null : byCustomer.get(customerId);
+        Map.Entry<Long, Order> last = history == null ? null : history.lastEntry();
+        return newerArchived(customerId, last == null ? null : last.getValue());
+    }
+
+    /**
+     * Gets the newest order of a customer that a driver took (the one they can rate)
+     * @param customerId UUID of the customer
+     * @return Order or null if none got a driver yet
+     */
+    public Order getLatestDispatchedOrderForCustomer(UUID customerId) {
+        NavigableMap<Long, Order> history = customerId == null ? null : byCustomer.get(customerId);
+        Order latest = null;
+        if (history != null) {
+            // Newest first, only orders still waiting for a driver get skipped
+            for (Order order : history.descendingMap().values()) {
+                if (order.getAssignedDriverId() != null) {
+                    latest = order;
+                    break;
+                }
+            }
+        }
+        return newerArchived(customerId, latest); // archived orders are delivered, so they all had a driver
+    }
+
+    /**
+     * Picks the newest of a live order and the customer's archived orders
+     */
+    private Order newerArchived(UUID customerId, Order latest) {
+        if (!archiving || customerId == null) {
+            return latest;
+        }
+        // The archive keeps each customer's newest order, so this decodes one order at most
+        FileManager.OrderData newest = fileManager.getNewestArchivedOrderForCustomer(customerId,
+            latest == null ? Long.MIN_VALUE : latest.getCreatedAtMillis());
+        if (newest == null || byId.containsKey(newest.getOrderId())) {
+            return latest;
+        }
+        return restoreArchived(newest);
+    }
+
+    /**
+     * Merges archived orders into a live history, oldest first. An order archived but
+     * not evicted yet shows up once, as the live one.
+     */
+    private Collection<Order> withArchived(Collection<Order> live, List<FileManager.OrderData> saved) {
+        if (saved.isEmpty()) {
+            return live;
+        }
+        Map<UUID, Order> merged = new HashMap<>();
+        for (FileManager.OrderData data : saved) {
+            Order order = restoreArchived(data);
+            if (order != null) {
+                merged.put(order.getId(), order);
+            }
+        }
+        for (Order order : live) {
+            merged.put(order.getId(), order);
+        }
+        List<Order> orders = new ArrayList<>(merged.values());
+        orders.sort(Comparator.comparingLong(Order::getCreatedAtMillis).thenComparingLong(Order::getSequence));
+        return Collections.unmodifiableList(orders);
+    }
+
+    /**
+     * Builds an Order from an archived one
+     * @return Order, null if there's none or its status can't be read
+     */
+    private static Order restoreArchived(FileManager.OrderData data) {
+        if (data == null) {
+            return null;
+        }
+        try {
+            return restore(data, Status.valueOf(data.getStatus().trim()), System.currentTimeMillis(), System.nanoTime());
+        } catch (IllegalArgumentException | NullPointerException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Builds an Order from a saved one, without a sequence
+     */
+    private static Order restore(FileManager.OrderData data, Status status, long nowMillis, long nowNanos) {
+        List<String> items = new ArrayList<>(data.getItemIds().size());
+        for (UUID itemId : data.getItemIds()) {
+            items.add(itemId.toString());
+        }
+        Order order = new Order(data.getOrderId(), data.getCustomerId(), data.getRestaurantId(), items, data.getTotalCents());
+        if (data.getCreatedAtMillis() != NO_TIME) {
+            // Keep millis and nanos lined up so durations from before the restart still make sense
+            order.createdAtMillis = data.getCreatedAtMillis();
+            order.createdAtNanos = nowNanos - (nowMillis - order.createdAtMillis) * 1_000_000;
+            order.statusNanos.set(Status.PLACED.ordinal(), order.createdAtNanos);
+        }
+        order.status.set(status); // loading, not a transition
+        order.assignedDriverId = data.getDriverId();
+        return order;
+    }
+
+    /**
+     * Gets the order a driver is working on right now, O(1)
+     * @param driverId UUID of the driver
+     * @return Order or null if they're free
+     */
+    public Order getActiveOrderForDriver(UUID driverId) {
+        return driverId == null ? null : activeByDriver.get(driverId);
+    }
+
+    /**
+     * Formats an order time for display
+     * @param epochMillis time to show
+     * @return String like 10/28/2025 01:15 PM, or null for NO_TIME
+     */
+    public static String formatTime(long epochMillis) {
+        if (epochMillis == NO_TIME) {
+            return null;
+        }
+        return DISPLAY_FORMAT.format(LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault()));
+    }
+
+    /**
+     * Reads an order time from a data file. Takes epoch millis or the old formatted text (10/28/2025 1:15 PM).
+     * @param text saved time
+     * @return epoch millis, or NO_TIME if it's missing or can't be read
+     */
+    public static long parseTime(String text) {
+        if (text == null) {
+            return NO_TIME;
+        }
+        String trimmed = text.trim();
+        if (trimmed.isEmpty() || trimmed.equals("null")) {
+            return NO_TIME;
+        }
+        try {
+            if (Character.isDigit(trimmed.charAt(0)) && trimmed.indexOf('/') < 0) {
+                return Long.parseLong(trimmed);
+            }
+            return LocalDateTime.parse(trimmed, LEGACY_FORMAT).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (NumberFormatException | DateTimeParseException e) {
+            return NO_TIME;
+        }
+    }
+
+    private static NavigableMap<Long, Order> historyFor(Map<UUID, NavigableMap<Long, Order>> index, UUID userId) {
+        return index.computeIfAbsent(userId, id -> new ConcurrentSkipListMap<>());
+    }
+
+    private static Collection<Order> historyView(Map<UUID, NavigableMap<Long, Order>> index, UUID userId) {
+        NavigableMap<Long, Order> history = userId == null ? null : index.get(userId);
+        return history == null ? Collections.emptyList() : Collections.unmodifiableCollection(history.values());
     }
 }
\ No newline at end of file
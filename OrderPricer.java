@@ -0,0 +1,146 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Prices baskets from an itemId -> (price, restaurant) index.
+ * FileManager keeps the index up to date as menu items are loaded, added, changed and removed,
+ * so a quote is one map lookup per item and never touches the menu list.
+ */
+public class OrderPricer {
+    /**
+     * Price and restaurant of one menu item, replaced as a whole so readers never see half an update
+     */
+    private static final class Entry {
+        private final long priceCents;
+        private final UUID restaurantId;
+
+        Entry(long priceCents, UUID restaurantId) {
+            this.priceCents = priceCents;
+            this.restaurantId = restaurantId;
+        }
+    }
+
+    /**
+     * Result of pricing a basket
+     */
+    public static final class Quote {
+        private final long totalCents;
+        private final UUID restaurantId;
+        private final List<UUID> itemIds;
+        private final String error;
+
+        private Quote(long totalCents, UUID restaurantId, List<UUID> itemIds, String error) {
+            this.totalCents = totalCents;
+            this.restaurantId = restaurantId;
+            this.itemIds = itemIds;
+            this.error = error;
+        }
+
+        private static Quote rejected(String error) {
+            return new Quote(0, null, Collections.emptyList(), error);
+        }
+
+        /**
+         * Checks if every item was found and they're all from one restaurant
+         * @return boolean
+         */
+        public boolean isValid() {
+            return error == null;
+        }
+
+        /**
+         * Gets why the basket was rejected
+         * @return message, null if it's valid
+         */
+        public String getError() {
+            return error;
+        }
+
+        public long getTotalCents() {
+            return totalCents;
+        }
+
+        public UUID getRestaurantId() {
+            return restaurantId;
+        }
+
+        /**
+         * Gets the parsed item ids in basket order
+         * @return read-only list
+         */
+        public List<UUID> getItemIds() {
+            return itemIds;
+        }
+    }
+
+    private final Map<UUID, Entry> index = new ConcurrentHashMap<>();
+
+    /**
+     * Adds or replaces an item's price in the index
+     * @param item MenuItem to index
+     */
+    public void put(MenuItem item) {
+        index.put(item.getItemId(), new Entry(item.getPriceCents(), item.getRestaurantId()));
+    }
+
+    /**
+     * Drops an item from the index
+     * @param itemId UUID of the item
+     */
+    public void remove(UUID itemId) {
+        index.remove(itemId);
+    }
+
+    /**
+     * Empties the index
+     */
+    public void clear() {
+        index.clear();
+    }
+
+    /**
+     * Prices a basket in one pass
+     * @param items item ids as typed or stored (whitespace is ignored)
+     * @return Quote, check isValid before using it
+     */
+    public Quote quote(List<String> items) {
+        if (items == null || items.isEmpty()) {
+            return Quote.rejected("Basket is empty");
+        }
+        List<UUID> itemIds = new ArrayList<>(items.size());
+        long total = 0;
+        UUID restaurantId = null;
+        for (String text : items) {
+            UUID itemId;
+            try {
+                itemId = UUID.fromString(text.trim());
+            } catch (IllegalArgumentException | NullPointerException e) {
+                return Quote.rejected("Not an item ID: " + text);
+            }
+            Entry entry = index.get(itemId);
+            if (entry == null) {
+                return Quote.rejected("Unknown item " + itemId);
+            }
+            if (restaurantId == null) {
+                restaurantId = entry.restaurantId;
+            } else if (!restaurantId.equals(entry.restaurantId)) {
+                return Quote.rejected("Items from more than one restaurant");
+            }
+            total = Money.add(total, entry.priceCents);
+            itemIds.add(itemId);
+        }
+        return new Quote(total, restaurantId, Collections.unmodifiableList(itemIds), null);
+    }
+
+    /**
+     * Gets how many items are indexed
+     * @return int
+     */
+    public int size() {
+        return index.size();
+    }
+}
@@ -0,0 +1,559 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Binary order storage, the alternative to orders.txt.
+ *
+ * orders.seg holds one fixed-width record per order so any order is a single offset away:
+ *   [0]   orderId        msb, lsb
+ *   [16]  customerId     msb, lsb
+ *   [32]  restaurantId   msb, lsb
+ *   [48]  driverId       msb, lsb (0, 0 = no driver)
+ *   [64]  createdAt      epoch millis
+ *   [72]  totalPrice     cents
+ *   [80]  itemsOffset    index of the first item in the items segment
+ *   [88]  itemCount
+ *   [92]  status         OrderManager.Status ordinal
+ *   [93]  flags          REMOVED once the order moved out (see OrderArchive), 0 otherwise
+ * orders.items is the side segment with every item id back to back (msb, lsb).
+ *
+ * Both files are read and written through a MappedByteBuffer. Only the orderId -> slot index
+ * lives on the heap (an IdRegistry, slot n is id n), OrderData objects are decoded when someone asks for one.
+ * Reads go through the same lock as writes, since a growing append remaps the buffers.
+ *
+ * Switching to SEGMENT converts orders.txt once, after that orders.txt isn't kept up to date.
+ * To go back to TEXT, write the segments back first: java OrderSegmentStore --to-text
+ * (that also deletes the segments, so a later switch to SEGMENT converts again).
+ */
+public class OrderSegmentStore {
+    private static final int MAGIC_ORDERS = 0x50454f53; // "PEOS"
+    private static final int MAGIC_ITEMS = 0x50454f49; // "PEOI"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16; // magic, version, count
+    private static final int RECORD_SIZE = 96;
+    private static final int ITEM_SIZE = 16;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private static final int ORDER_ID = 0;
+    private static final int CUSTOMER_ID = 16;
+    private static final int RESTAURANT_ID = 32;
+    private static final int DRIVER_ID = 48;
+    private static final int CREATED_AT = 64;
+    private static final int TOTAL_PRICE = 72;
+    private static final int ITEMS_OFFSET = 80;
+    private static final int ITEM_COUNT = 88;
+    private static final int STATUS = 92;
+    private static final int FLAGS = 93;
+    private static final byte REMOVED = 1;
+
+    private static final OrderManager.Status[] STATUSES = OrderManager.Status.values();
+
+    private final Path segmentPath;
+    private final Path itemsPath;
+    private final IdRegistry slots = new IdRegistry(INITIAL_CAPACITY);
+    private FileChannel segmentChannel;
+    private FileChannel itemsChannel;
+    private volatile MappedByteBuffer segment;
+    private volatile MappedByteBuffer items;
+    private volatile int count;
+    private volatile int removed;
+    private long itemCount;
+    private boolean unforced; // appended records the headers don't count yet
+
+    /**
+     * Opens (or creates) a segment pair and indexes the order ids
+     * @param segmentPath fixed-width order records
+     * @param itemsPath item id side segment
+     * @throws IOException if the files can't be opened or aren't segment files
+     */
+    public OrderSegmentStore(Path segmentPath, Path itemsPath) throws IOException {
+        this.segmentPath = segmentPath;
+        this.itemsPath = itemsPath;
+        open();
+    }
+
+    private void open() throws IOException {
+        segmentChannel = FileChannel.open(segmentPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        itemsChannel = FileChannel.open(itemsPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = mapWithHeader(segmentChannel, MAGIC_ORDERS, HEADER_SIZE + (long) INITIAL_CAPACITY * RECORD_SIZE);
+        items = mapWithHeader(itemsChannel, MAGIC_ITEMS, HEADER_SIZE + (long) INITIAL_CAPACITY * ITEM_SIZE);
+        count = (int) segment.getLong(8);
+        itemCount = items.getLong(8);
+        removed = 0;
+        slots.clear();
+        for (int slot = 0; slot < count; slot++) {
+            if (slots.intern(readUuid(segment, recordOffset(slot) + ORDER_ID)) != slot) {
+                throw new IOException("Order id stored twice in " + segmentPath);
+            }
+            if (isRemoved(segment, slot)) {
+                removed++;
+            }
+        }
+    }
+
+    private static MappedByteBuffer mapWithHeader(FileChannel channel, int magic, long initialSize) throws IOException {
+        boolean fresh = channel.size() == 0;
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fresh ? initialSize : channel.size());
+        if (fresh) {
+            buffer.putInt(0, magic);
+            buffer.putInt(4, VERSION);
+            buffer.putLong(8, 0);
+        } else if (buffer.getInt(0) != magic || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a version " + VERSION + " order segment");
+        }
+        return buffer;
+    }
+
+    /**
+     * Gets how many orders are stored
+     * @return order count, removed ones not included
+     */
+    public synchronized int size() {
+        return count - removed;
+    }
+
+    /**
+     * Gets how many records were ever appended, removed ones included. Slots go from 0 to this.
+     * @return record count
+     */
+    public int slotCount() {
+        return count;
+    }
+
+    /**
+     * Checks if an order is stored
+     * @param orderId UUID of the order
+     * @return true if found
+     */
+    public synchronized boolean contains(UUID orderId) {
+        return slotOf(orderId) != IdRegistry.NONE;
+    }
+
+    /**
+     * Gets the slot an order is stored in
+     * @param orderId UUID of the order
+     * @return slot, IdRegistry.NONE if it's not stored
+     */
+    public synchronized int slotOf(UUID orderId) {
+        int slot = slots.indexOf(orderId);
+        return slot == IdRegistry.NONE || isRemoved(segment, slot) ? IdRegistry.NONE : slot;
+    }
+
+    /**
+     * Decodes one order
+     * @param orderId UUID of the order
+     * @return OrderData if found, null otherwise
+     */
+    public synchronized FileManager.OrderData get(UUID orderId) {
+        int slot = slotOf(orderId);
+        return slot == IdRegistry.NONE ? null : decode(slot);
+    }
+
+    /**
+     * Decodes the order in a slot
+     * @param slot from slotOf, 0 to slotCount
+     * @return OrderData, null if the order was removed
+     */
+    public synchronized FileManager.OrderData getAt(int slot) {
+        if (slot < 0 || slot >= count) {
+            throw new IndexOutOfBoundsException("No order in slot " + slot);
+        }
+        return isRemoved(segment, slot) ? null : decode(slot);
+    }
+
+    /**
+     * Appends an order and forces it to disk
+     * @param order order to store
+     * @return true if stored, false if the id is already taken or the write failed
+     */
+    public synchronized boolean append(FileManager.OrderData order) {
+        return append(order, true);
+    }
+
+    /**
+     * Appends an order, forcing it to disk only if asked. An unforced order can be read right away
+     * but the file's count only takes it in at the next force (or forced append), so a crash before
+     * that loses it instead of leaving a half written record.
+     * @param order order to store
+     * @param force true to force it to disk before returning
+     * @return true if stored, false if the id is already taken, the status isn't an OrderManager.Status or the write failed
+     */
+    public synchronized boolean append(FileManager.OrderData order, boolean force) {
+        if (slots.indexOf(order.getOrderId()) != IdRegistry.NONE) {
+            return false;
+        }
+        byte status = statusByte(order.getStatus());
+        if (status < 0) {
+            System.err.println("Can't store order " + order.getOrderId() + " with unknown status " + order.getStatus());
+            return false;
+        }
+        try {
+            List<UUID> itemIds = order.getItemIds();
+            ensureCapacity(count + 1, itemCount + itemIds.size());
+            long firstItem = itemCount;
+            for (UUID itemId : itemIds) {
+                writeUuid(items, HEADER_SIZE + (int) (itemCount * ITEM_SIZE), itemId);
+                itemCount++;
+            }
+
+            int offset = recordOffset(count);
+            writeUuid(segment, offset + ORDER_ID, order.getOrderId());
+            writeUuid(segment, offset + CUSTOMER_ID, order.getCustomerId());
+            writeUuid(segment, offset + RESTAURANT_ID, order.getRestaurantId());
+            writeUuid(segment, offset + DRIVER_ID, order.getDriverId());
+            segment.putLong(offset + CREATED_AT, order.getCreatedAtMillis());
+            segment.putLong(offset + TOTAL_PRICE, order.getTotalCents());
+            segment.putLong(offset + ITEMS_OFFSET, firstItem);
+            segment.putInt(offset + ITEM_COUNT, itemIds.size());
+            segment.put(offset + STATUS, status);
+            segment.put(offset + FLAGS, (byte) 0); // clear() leaves old records behind
+            slots.intern(order.getOrderId());
+            count++;
+            if (force) {
+                forceAppends(firstItem, itemIds.size(), offset);
+            } else {
+                unforced = true;
+            }
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error appending to " + segmentPath + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Forces every unforced append to disk
+     */
+    public synchronized void force() {
+        if (unforced) {
+            forceAppends(0, 0, 0);
+        }
+    }
+
+    /**
+     * Records first, counts last, so a crash in between just loses the orders not counted yet.
+     * With nothing unforced only the one record gets flushed, otherwise the whole mapping.
+     */
+    private void forceAppends(long firstItem, int itemTotal, int offset) {
+        if (unforced) {
+            items.force();
+            segment.force();
+            unforced = false;
+        } else {
+            items.force(HEADER_SIZE + (int) (firstItem * ITEM_SIZE), itemTotal * ITEM_SIZE);
+            segment.force(offset, RECORD_SIZE);
+        }
+        items.putLong(8, itemCount);
+        items.force(0, HEADER_SIZE);
+        segment.putLong(8, count);
+        segment.force(0, HEADER_SIZE);
+    }
+
+    /**
+     * Overwrites the status and driver of an order in place
+     * @param orderId UUID of the order
+     * @param status new status name
+     * @param driverId new driver, null for none
+     * @return true if the order was found and the status is an OrderManager.Status
+     */
+    public synchronized boolean updateStatus(UUID orderId, String status, UUID driverId) {
+        int slot = slotOf(orderId);
+        if (slot == IdRegistry.NONE) {
+            return false;
+        }
+        byte statusByte = statusByte(status);
+        if (statusByte < 0) {
+            System.err.println("Can't store order " + orderId + " with unknown status " + status);
+            return false;
+        }
+        int offset = recordOffset(slot);
+        writeUuid(segment, offset + DRIVER_ID, driverId);
+        segment.put(offset + STATUS, statusByte);
+        segment.force(offset, RECORD_SIZE);
+        return true;
+    }
+
+    /**
+     * Marks an order as removed. The record stays in the file (records never move),
+     * it just stops showing up. Its id can't be appended again. The mark isn't forced,
+     * the next forced write or close takes it along.
+     * @param orderId UUID of the order
+     * @return true if the order was found
+     */
+    public synchronized boolean remove(UUID orderId) {
+        int slot = slotOf(orderId);
+        if (slot == IdRegistry.NONE) {
+            return false;
+        }
+        segment.put(recordOffset(slot) + FLAGS, REMOVED);
+        removed++;
+        return true;
+    }
+
+    /**
+     * Read-only map view over the segment. Nothing is copied, entries are decoded while iterating.
+     * @return Map of orders by UUID
+     */
+    public Map<UUID, FileManager.OrderData> asMap() {
+        return new AbstractMap<UUID, FileManager.OrderData>() {
+            @Override
+            public int size() {
+                return OrderSegmentStore.this.size();
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return key instanceof UUID && contains((UUID) key);
+            }
+
+            @Override
+            public FileManager.OrderData get(Object key) {
+                return key instanceof UUID ? OrderSegmentStore.this.get((UUID) key) : null;
+            }
+
+            @Override
+            public Set<Map.Entry<UUID, FileManager.OrderData>> entrySet() {
+                return new AbstractSet<Map.Entry<UUID, FileManager.OrderData>>() {
+                    @Override
+                    public int size() {
+                        return OrderSegmentStore.this.size();
+                    }
+
+                    @Override
+                    public Iterator<Map.Entry<UUID, FileManager.OrderData>> iterator() {
+                        final int end = count;
+                        return new Iterator<Map.Entry<UUID, FileManager.OrderData>>() {
+                            private int slot = 0;
+
+                            private FileManager.OrderData pending;
+
+                            @Override
+                            public boolean hasNext() {
+                                if (pending != null) {
+                                    return true;
+                                }
+                                synchronized (OrderSegmentStore.this) {
+                                    int last = Math.min(end, count); // clear() can shrink it under us
+                                    while (slot < last && isRemoved(segment, slot)) {
+                                        slot++;
+                                    }
+                                    if (slot < last) {
+                                        pending = decode(slot++);
+                                    }
+                                }
+                                return pending != null;
+                            }
+
+                            @Override
+                            public Map.Entry<UUID, FileManager.OrderData> next() {
+                                if (!hasNext()) {
+                                    throw new NoSuchElementException();
+                                }
+                                FileManager.OrderData order = pending;
+                                pending = null;
+                                return new AbstractMap.SimpleImmutableEntry<>(order.getOrderId(), order);
+                            }
+                        };
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Drops every order
+     */
+    public synchronized void clear() {
+        segment.putLong(8, 0);
+        items.putLong(8, 0);
+        segment.force();
+        items.force();
+        count = 0;
+        removed = 0;
+        itemCount = 0;
+        unforced = false;
+        slots.clear();
+    }
+
+    /**
+     * Flushes and closes both files
+     */
+    public synchronized void close() {
+        force();
+        try {
+            segment.force();
+            items.force();
+            segmentChannel.close();
+            itemsChannel.close();
+        } catch (IOException e) {
+            System.err.println("Error closing " + segmentPath + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Caller holds the lock
+     */
+    private FileManager.OrderData decode(int slot) {
+        MappedByteBuffer seg = segment;
+        MappedByteBuffer itemSeg = items;
+        int offset = recordOffset(slot);
+        long firstItem = seg.getLong(offset + ITEMS_OFFSET);
+        int itemTotal = seg.getInt(offset + ITEM_COUNT);
+        List<UUID> itemIds = new ArrayList<>(itemTotal);
+        for (int i = 0; i < itemTotal; i++) {
+            itemIds.add(readUuid(itemSeg, HEADER_SIZE + (int) ((firstItem + i) * ITEM_SIZE)));
+        }
+        byte status = seg.get(offset + STATUS);
+        return new FileManager.OrderData(
+            readUuid(seg, offset + ORDER_ID),
+            readUuid(seg, offset + CUSTOMER_ID),
+            readUuid(seg, offset + RESTAURANT_ID),
+            itemIds,
+            status >= 0 && status < STATUSES.length ? STATUSES[status].toString() : "UNKNOWN", // only in files from before append checked
+            readUuid(seg, offset + DRIVER_ID),
+            seg.getLong(offset + CREATED_AT),
+            seg.getLong(offset + TOTAL_PRICE)
+        );
+    }
+
+    private void ensureCapacity(int records, long itemRecords) throws IOException {
+        long segmentNeeded = HEADER_SIZE + (long) records * RECORD_SIZE;
+        if (segmentNeeded > segment.capacity()) {
+            segment = segmentChannel.map(FileChannel.MapMode.READ_WRITE, 0, grow(segment.capacity(), segmentNeeded));
+        }
+        long itemsNeeded = HEADER_SIZE + itemRecords * ITEM_SIZE;
+        if (itemsNeeded > items.capacity()) {
+            items = itemsChannel.map(FileChannel.MapMode.READ_WRITE, 0, grow(items.capacity(), itemsNeeded));
+        }
+    }
+
+    private static long grow(long current, long needed) throws IOException {
+        long size = current;
+        while (size < needed) {
+            size *= 2;
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Segment is full (2GB mapping limit)");
+        }
+        return size;
+    }
+
+    private static boolean isRemoved(ByteBuffer buffer, int slot) {
+        return buffer.get(recordOffset(slot) + FLAGS) == REMOVED;
+    }
+
+    private static int recordOffset(int slot) {
+        return HEADER_SIZE + slot * RECORD_SIZE;
+    }
+
+    private static void writeUuid(ByteBuffer buffer, int offset, UUID id) {
+        buffer.putLong(offset, id == null ? 0 : id.getMostSignificantBits());
+        buffer.putLong(offset + 8, id == null ? 0 : id.getLeastSignificantBits());
+    }
+
+    private static UUID readUuid(ByteBuffer buffer, int offset) {
+        long msb = buffer.getLong(offset);
+        long lsb = buffer.getLong(offset + 8);
+        return msb == 0 && lsb == 0 ? null : new UUID(msb, lsb);
+    }
+
+    private static byte statusByte(String status) {
+        try {
+            return (byte) OrderManager.Status.valueOf(status.trim()).ordinal();
+        } catch (IllegalArgumentException | NullPointerException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Converts an orders.txt file into a segment pair. Orders already in the segment are skipped,
+     * so running it twice is harmless.
+     * @param textPath orders.txt to read
+     * @param segmentPath segment to write
+     * @param itemsPath item side segment to write
+     * @return number of orders converted
+     * @throws IOException if either side can't be read or written
+     */
+    public static int convertFromText(Path textPath, Path segmentPath, Path itemsPath) throws IOException {
+        OrderSegmentStore store = new OrderSegmentStore(segmentPath, itemsPath);
+        int converted = 0;
+        try (BufferedReader reader = Files.newBufferedReader(textPath, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                FileManager.OrderData order = FileManager.parseOrderLine(line);
+                if (order != null && store.append(order)) {
+                    converted++;
+                }
+            }
+        } finally {
+            store.close();
+        }
+        return converted;
+    }
+
+    /**
+     * Writes a segment pair back into an orders.txt file, replacing it, then deletes the segments.
+     * Removed (archived) orders are left out, like they are from orders.txt in TEXT mode.
+     * @param segmentPath segment to read
+     * @param itemsPath item side segment to read
+     * @param textPath orders.txt to write
+     * @return number of orders written
+     * @throws IOException if either side can't be read or written
+     */
+    public static int convertToText(Path segmentPath, Path itemsPath, Path textPath) throws IOException {
+        OrderSegmentStore store = new OrderSegmentStore(segmentPath, itemsPath);
+        Path temp = textPath.resolveSibling(textPath.getFileName() + ".tmp");
+        int converted = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            writer.write(FileManager.ORDERS_HEADER);
+            writer.newLine();
+            for (FileManager.OrderData order : store.asMap().values()) {
+                writer.write(FileManager.formatOrderLine(order.getOrderId(), order.getCustomerId(), order.getRestaurantId(),
+                    order.getItemIds(), order.getStatus(), order.getDriverId(), order.getCreatedAtMillis(), order.getTotalCents()));
+                writer.newLine();
+                converted++;
+            }
+        } finally {
+            store.close();
+        }
+        Files.move(temp, textPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.delete(segmentPath);
+        Files.delete(itemsPath);
+        return converted;
+    }
+
+    /**
+     * Converts orders from the command line, to segments by default or back with --to-text:
+     *   java OrderSegmentStore [orders.txt] [orders.seg] [orders.items]
+     *   java OrderSegmentStore --to-text [orders.seg] [orders.items] [orders.txt]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("--to-text")) {
+            Path seg = Path.of(args.length > 1 ? args[1] : "orders.seg");
+            Path itemSeg = Path.of(args.length > 2 ? args[2] : "orders.items");
+            Path text = Path.of(args.length > 3 ? args[3] : "orders.txt");
+            int converted = convertToText(seg, itemSeg, text);
+            System.out.println("Wrote " + converted + " orders back into " + text);
+            return;
+        }
+        Path text = Path.of(args.length > 0 ? args[0] : "orders.txt");
+        Path seg = Path.of(args.length > 1 ? args[1] : "orders.seg");
+        Path itemSeg = Path.of(args.length > 2 ? args[2] : "orders.items");
+        int converted = convertFromText(text, seg, itemSeg);
+        System.out.println("Converted " + converted + " orders into " + seg);
+    }
+}
@@ -35,6 +35,8 @@ public class OrderSimulator {
     private void initData() {
         FileManager fm = appController.getFileManager();
         fm.reset();
+        appController.getOrderManager().clear();
+        appController.getDispatchEngine().clear();
 
         fm.addRestaurant("Burger Joint", "Burgers");
         fm.addRestaurant("Pasta Place", "Italian");
@@ -58,7 +60,8 @@ public class OrderSimulator {
             fm.addCustomer("customer" + i, "Customer " + i, "customer" + i + "@email.com");
         }
         
-        appController.getDriverPool().updatePoolDrivers(fm);
+        appController.getDriverPool().clearPool();
+        appController.getDispatchEngine().refreshDrivers();
     }
 
     private void loop() {
@@ -93,55 +96,31 @@ public class OrderSimulator {
             int count = 1 + rand.nextInt(Math.min(3, menu.size()));
             List<String> items = new ArrayList<>();
             Collections.shuffle(menu);
-            double total = 0;
             for (int i = 0; i < count; i++) {
-                MenuItem item = menu.get(i);
-                items.add(item.getItemId().toString());
-                total += item.getPrice().doubleValue();
+                items.add(menu.get(i).getItemId().toString());
             }
+            OrderPricer.Quote quote = appController.getFileManager().getOrderPricer().quote(items);
+            if (!quote.isValid()) return;
 
-            OrderManager.Order order = appController.getOrderManager().place(customer.getId(), items, total);
+            OrderManager.Order order = appController.getOrderManager().place(customer.getId(), quote.getRestaurantId(), items, quote.getTotalCents());
             
             if (order != null) {
-                List<UUID> itemUuids = new ArrayList<>();
-                for (String i : items) itemUuids.add(UUID.fromString(i));
-                
-                appController.getFileManager().appendOrder(
-                    order.getId(),
-                    order.getCustomerId(),
-                    restaurant.getRestaurantId(),
-                    itemUuids,
-                    order.getStatus().toString(),
-                    null,
-                    order.getCreatedAt(),
-                    total
-                );
-
-                if (!appController.getDriverPool().isEmpty()) {
-                    Driver driver = appController.getDriverPool().getNextAvailableDriver();
-                    if (driver != null) {
-                        OrderManager.Order accepted = appController.getOrderManager().acceptNext(driver.getId());
-                        if (accepted != null) {
-                            driver.setCurrentOrder(accepted.getId());
-                            driver.setAvailable(false);
-                            appController.getFileManager().updateDriver(driver.getId(), false, driver.getAvgRating());
-                        }
-                    }
-                }
+                customer.addOrder(order.getId());
+                appController.getDispatchEngine().submit(order);
             }
         } catch (Exception e) {}
     }
 
     /**
      * Gets all drivers from FileManager
-     * @return List of all drivers, or empty list if none found
+     * @return read-only view of all drivers (shared, not copied), or empty if none found
      */
-    private List<Driver> getAllDrivers() {
+    private Collection<Driver> getAllDrivers() {
         Map<UUID, Driver> driverMap = appController.getFileManager().getAllDrivers();
         if (driverMap == null) {
-            return new ArrayList<>();
+            return Collections.emptyList();
         }
-        return new ArrayList<>(driverMap.values());
+        return driverMap.values();
     }
 
     /**
@@ -149,7 +128,7 @@ public class OrderSimulator {
      * @return List of available drivers
      */
     private List<Driver> getAvailableDrivers() {
-        List<Driver> allDrivers = getAllDrivers();
+        Collection<Driver> allDrivers = getAllDrivers();
         List<Driver> available = new ArrayList<>();
         for (Driver driver : allDrivers) {
             if (driver.isAvailable() && driver.getCurrentOrder() == null) {
@@ -164,7 +143,7 @@ public class OrderSimulator {
      * @return List of drivers with current orders
      */
     private List<Driver> getActiveDrivers() {
-        List<Driver> allDrivers = getAllDrivers();
+        Collection<Driver> allDrivers = getAllDrivers();
         List<Driver> active = new ArrayList<>();
         for (Driver driver : allDrivers) {
             if (driver.getCurrentOrder() != null) {
@@ -179,14 +158,9 @@ public class OrderSimulator {
             List<Driver> available = getAvailableDrivers();
             if (available.isEmpty()) return;
             
+            // A random idle driver grabs the next order themselves, the engine keeps it atomic
             Driver driver = available.get(rand.nextInt(available.size()));
-            OrderManager.Order order = appController.getOrderManager().acceptNext(driver.getId());
-            
-            if (order != null) {
-                driver.setCurrentOrder(order.getId());
-                driver.setAvailable(false);
-                appController.getFileManager().updateDriver(driver.getId(), false, driver.getAvgRating());
-            }
+            appController.getDispatchEngine().acceptNextFor(driver);
         } catch (Exception e) {}
     }
 
@@ -202,7 +176,9 @@ public class OrderSimulator {
                 if (order.getStatus() == OrderManager.Status.ACCEPTED) {
                     driver.updateOrderStatus(appController.getOrderManager(), OrderManager.Status.IN_PROGRESS);
                 } else if (order.getStatus() == OrderManager.Status.IN_PROGRESS) {
-                    driver.updateOrderStatus(appController.getOrderManager(), OrderManager.Status.DELIVERED);
+                    if (!driver.updateOrderStatus(appController.getOrderManager(), OrderManager.Status.DELIVERED)) {
+                        return; // someone else moved it
+                    }
                     
                     int rating = 1 + rand.nextInt(5);
                     driver.addRating(rating);
@@ -210,7 +186,7 @@ public class OrderSimulator {
                     driver.setCurrentOrder(null);
                     driver.setAvailable(true);
                     appController.getFileManager().updateDriver(driver.getId(), true, driver.getAvgRating());
-                    appController.getDriverPool().updatePoolDrivers(appController.getFileManager());
+                    appController.getDispatchEngine().driverAvailable(driver);
                 }
             }
         } catch (Exception e) {}
@@ -233,7 +209,7 @@ public class OrderSimulator {
             StringBuilder sb = new StringBuilder();
             String[] anim = {"|", "/", "-", "\\"};
             
-            List<Driver> drivers = getAllDrivers();
+            Collection<Driver> drivers = getAllDrivers();
             for (Driver driver : drivers) {
                 if (driver.isAvailable()) available++;
                 
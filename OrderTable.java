@@ -0,0 +1,392 @@
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory order storage for when orders live in orders.txt, the heap twin of OrderSegmentStore.
+ *
+ * A HashMap of OrderData costs around 350 bytes an order before its items (map entry, 4 UUID objects,
+ * a status String, an ArrayList) plus 36 bytes per item. Here every order is a row of primitive columns:
+ *   orderIds     UUID -> row, rows are handed out in the order orders come in
+ *   customers    \
+ *   restaurants   > int ids from the refs registry (driver NONE = no driver)
+ *   drivers      /
+ *   statuses     byte index into statusNames, kept as typed so the file round trips
+ *   createdAt, totals
+ *   itemStarts   where the row's items start in itemPool, they end where the next row's start
+ *   itemPool     every item id back to back, as ints from the refs registry
+ *   sequences    when the order came in, counts up and survives compaction (iterators resume from it)
+ * which is about 75 bytes an order plus 4 per item. OrderData objects are decoded when someone asks.
+ *
+ * Removing an order (archiving it, see OrderArchive) just marks its row. Once more than half the
+ * rows are marked, the live ones get copied into fresh, smaller columns and registries, so the table
+ * stays sized for the orders still in it rather than every order it ever held.
+ */
+public class OrderTable {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final List<String> statusNames = new ArrayList<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private IdRegistry orderIds;
+    private IdRegistry refs; // customers, restaurants, drivers and items
+    private int[] customers;
+    private int[] restaurants;
+    private int[] drivers;
+    private byte[] statuses;
+    private long[] createdAt;
+    private long[] totals;
+    private int[] itemStarts;
+    private int[] itemPool;
+    private long[] sequences; // increasing with the row, so a row can be found again after compaction
+    private long nextSequence;
+    private final BitSet removedRows = new BitSet();
+    private int count;
+    private int removed;
+    private int epoch; // bumped when rows get renumbered, so iterators know to find their place again
+
+    public OrderTable() {
+        allocate(INITIAL_CAPACITY, INITIAL_CAPACITY * 2);
+    }
+
+    /**
+     * Gets how many orders are stored
+     * @return order count
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return count - removed;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Checks if an order is stored
+     * @param orderId UUID of the order
+     * @return true if found
+     */
+    public boolean contains(UUID orderId) {
+        lock.readLock().lock();
+        try {
+            return rowOf(orderId) != IdRegistry.NONE;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Decodes one order
+     * @param orderId UUID of the order
+     * @return a fresh OrderData if found (changing it changes nothing here), null otherwise
+     */
+    public FileManager.OrderData get(UUID orderId) {
+        lock.readLock().lock();
+        try {
+            int row = rowOf(orderId);
+            return row == IdRegistry.NONE ? null : decode(row);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds an order
+     * @param order order to store
+     * @return true if stored, false if the id is already taken
+     */
+    public boolean append(FileManager.OrderData order) {
+        lock.writeLock().lock();
+        try {
+            if (orderIds.indexOf(order.getOrderId()) != IdRegistry.NONE) {
+                return false;
+            }
+            appendRow(order, nextSequence++);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Changes the status and driver of an order
+     * @param orderId UUID of the order
+     * @param status new status name
+     * @param driverId new driver, null for none
+     * @return the order as it is now, null if it wasn't found
+     */
+    public FileManager.OrderData updateStatus(UUID orderId, String status, UUID driverId) {
+        lock.writeLock().lock();
+        try {
+            int row = rowOf(orderId);
+            if (row == IdRegistry.NONE) {
+                return null;
+            }
+            statuses[row] = statusIndex(status);
+            drivers[row] = driverId == null ? IdRegistry.NONE : refs.intern(driverId);
+            return decode(row);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Drops an order
+     * @param orderId UUID of the order
+     * @return true if the order was found
+     */
+    public boolean remove(UUID orderId) {
+        lock.writeLock().lock();
+        try {
+            int row = rowOf(orderId);
+            if (row == IdRegistry.NONE) {
+                return false;
+            }
+            removedRows.set(row);
+            removed++;
+            compactIfSparse();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Read-only map view over the table. Nothing is copied, entries are decoded while iterating,
+     * and iterating only sees the orders that were there when it started (minus any removed since).
+     * Removes, compaction and clear can happen while iterating, every order is still returned at most once.
+     * @return Map of orders by UUID
+     */
+    public Map<UUID, FileManager.OrderData> asMap() {
+        return new AbstractMap<UUID, FileManager.OrderData>() {
+            @Override
+            public int size() {
+                return OrderTable.this.size();
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return key instanceof UUID && contains((UUID) key);
+            }
+
+            @Override
+            public FileManager.OrderData get(Object key) {
+                return key instanceof UUID ? OrderTable.this.get((UUID) key) : null;
+            }
+
+            @Override
+            public Set<Map.Entry<UUID, FileManager.OrderData>> entrySet() {
+                return new AbstractSet<Map.Entry<UUID, FileManager.OrderData>>() {
+                    @Override
+                    public int size() {
+                        return OrderTable.this.size();
+                    }
+
+                    @Override
+                    public Iterator<Map.Entry<UUID, FileManager.OrderData>> iterator() {
+                        final long endSequence;
+                        final int startEpoch;
+                        lock.readLock().lock();
+                        try {
+                            endSequence = nextSequence;
+                            startEpoch = epoch;
+                        } finally {
+                            lock.readLock().unlock();
+                        }
+                        return new Iterator<Map.Entry<UUID, FileManager.OrderData>>() {
+                            private int row = 0;
+                            private int rowEpoch = startEpoch;
+                            private long lastSequence = -1; // of the last order returned
+                            private FileManager.OrderData pending;
+
+                            @Override
+                            public boolean hasNext() {
+                                if (pending != null) {
+                                    return true;
+                                }
+                                lock.readLock().lock();
+                                try {
+                                    if (epoch != rowEpoch) { // rows got renumbered, pick up after the last one returned
+                                        row = firstRowAfter(lastSequence);
+                                        rowEpoch = epoch;
+                                    }
+                                    row = removedRows.nextClearBit(row);
+                                    if (row < count && sequences[row] < endSequence) {
+                                        lastSequence = sequences[row];
+                                        pending = decode(row++);
+                                    }
+                                } finally {
+                                    lock.readLock().unlock();
+                                }
+                                return pending != null;
+                            }
+
+                            @Override
+                            public Map.Entry<UUID, FileManager.OrderData> next() {
+                                if (!hasNext()) {
+                                    throw new NoSuchElementException();
+                                }
+                                FileManager.OrderData order = pending;
+                                pending = null;
+                                return new AbstractMap.SimpleImmutableEntry<>(order.getOrderId(), order);
+                            }
+                        };
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Drops every order
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            statusNames.clear();
+            allocate(INITIAL_CAPACITY, INITIAL_CAPACITY * 2);
+            epoch++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Row of a stored order, NONE if it was never added or was removed
+     */
+    private int rowOf(UUID orderId) {
+        int row = orderIds.indexOf(orderId);
+        return row == IdRegistry.NONE || removedRows.get(row) ? IdRegistry.NONE : row;
+    }
+
+    /**
+     * First row that came in after the given sequence, count if none
+     */
+    private int firstRowAfter(long sequence) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sequences[mid] <= sequence) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void appendRow(FileManager.OrderData order, long sequence) {
+        List<UUID> itemIds = order.getItemIds();
+        ensureCapacity(count + 1, itemStarts[count] + itemIds.size());
+        int row = orderIds.intern(order.getOrderId());
+        customers[row] = refs.intern(order.getCustomerId());
+        restaurants[row] = refs.intern(order.getRestaurantId());
+        drivers[row] = order.getDriverId() == null ? IdRegistry.NONE : refs.intern(order.getDriverId());
+        statuses[row] = statusIndex(order.getStatus());
+        createdAt[row] = order.getCreatedAtMillis();
+        totals[row] = order.getTotalCents();
+        sequences[row] = sequence;
+        int next = itemStarts[row];
+        for (UUID itemId : itemIds) {
+            itemPool[next++] = refs.intern(itemId);
+        }
+        itemStarts[row + 1] = next;
+        count++;
+    }
+
+    /**
+     * Copies the live rows into fresh columns once most rows are removed.
+     * Only small tables skip it, so the copy is paid for by the removes that made it necessary.
+     */
+    private void compactIfSparse() {
+        if (count < INITIAL_CAPACITY || removed * 2 <= count) {
+            return;
+        }
+        List<FileManager.OrderData> live = new ArrayList<>(count - removed);
+        long[] liveSequences = new long[count - removed];
+        int liveItems = 0; // removed rows' items don't come along
+        for (int row = removedRows.nextClearBit(0); row < count; row = removedRows.nextClearBit(row + 1)) {
+            liveSequences[live.size()] = sequences[row];
+            live.add(decode(row));
+            liveItems += itemStarts[row + 1] - itemStarts[row];
+        }
+        allocate(Math.max(INITIAL_CAPACITY, live.size() * 2), Math.max(INITIAL_CAPACITY * 2, liveItems));
+        for (int i = 0; i < live.size(); i++) {
+            appendRow(live.get(i), liveSequences[i]);
+        }
+        epoch++;
+    }
+
+    /**
+     * Starts over with empty columns and registries sized for the given rows and items
+     */
+    private void allocate(int rows, int items) {
+        orderIds = new IdRegistry(rows);
+        refs = new IdRegistry(rows);
+        customers = new int[rows];
+        restaurants = new int[rows];
+        drivers = new int[rows];
+        statuses = new byte[rows];
+        createdAt = new long[rows];
+        totals = new long[rows];
+        sequences = new long[rows];
+        itemStarts = new int[rows + 1];
+        itemPool = new int[items];
+        removedRows.clear();
+        count = 0;
+        removed = 0;
+    }
+
+    private FileManager.OrderData decode(int row) {
+        int from = itemStarts[row];
+        int to = itemStarts[row + 1];
+        List<UUID> itemIds = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            itemIds.add(refs.get(itemPool[i]));
+        }
+        return new FileManager.OrderData(
+            orderIds.get(row),
+            refs.get(customers[row]),
+            refs.get(restaurants[row]),
+            itemIds,
+            statusNames.get(statuses[row] & 0xff),
+            refs.get(drivers[row]),
+            createdAt[row],
+            totals[row]
+        );
+    }
+
+    /**
+     * Statuses are a handful of names, so rows keep a byte index instead of a String each
+     */
+    private byte statusIndex(String status) {
+        int index = statusNames.indexOf(status);
+        if (index < 0) {
+            if (statusNames.size() > 0xff) {
+                throw new IllegalStateException("Too many different order statuses");
+            }
+            index = statusNames.size();
+            statusNames.add(status);
+        }
+        return (byte) index;
+    }
+
+    private void ensureCapacity(int rows, int items) {
+        if (rows > customers.length) {
+            int capacity = Math.max(rows, customers.length + (customers.length >> 1));
+            customers = Arrays.copyOf(customers, capacity);
+            restaurants = Arrays.copyOf(restaurants, capacity);
+            drivers = Arrays.copyOf(drivers, capacity);
+            statuses = Arrays.copyOf(statuses, capacity);
+            createdAt = Arrays.copyOf(createdAt, capacity);
+            totals = Arrays.copyOf(totals, capacity);
+            sequences = Arrays.copyOf(sequences, capacity);
+            itemStarts = Arrays.copyOf(itemStarts, capacity + 1);
+        }
+        if (items > itemPool.length) {
+            itemPool = Arrays.copyOf(itemPool, Math.max(items, itemPool.length + (itemPool.length >> 1)));
+        }
+    }
+}
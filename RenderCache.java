@@ -0,0 +1,111 @@
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the browse text (each restaurant's menu, and the restaurant list) built until the data behind it changes.
+ * FileManager bumps a restaurant's version after changing its row or its menu items, and the list's
+ * version when restaurants come, go or get renamed. A render is only stored if the version didn't move
+ * while it was being built, so a stale string never outlives the change that made it stale.
+ */
+public class RenderCache {
+    /**
+     * One rendered string and the version it was built from
+     */
+    private static final class Entry {
+        private final long version;
+        private final String text;
+
+        Entry(long version, String text) {
+            this.version = version;
+            this.text = text;
+        }
+    }
+
+    private final Map<UUID, AtomicLong> menuVersions = new ConcurrentHashMap<>();
+    private final Map<UUID, Entry> menus = new ConcurrentHashMap<>();
+    private final AtomicLong listingVersion = new AtomicLong();
+    private volatile Entry listing;
+
+    /**
+     * Gets a restaurant's rendered menu, building it if it changed since last time
+     * @param restaurantId UUID of the restaurant
+     * @param renderer builds the text from the current data
+     * @return shared String
+     */
+    public String getMenu(UUID restaurantId, Supplier<String> renderer) {
+        long version = versionFor(restaurantId).get();
+        Entry entry = menus.get(restaurantId);
+        if (entry != null && entry.version == version) {
+            return entry.text;
+        }
+        String text = renderer.get();
+        menus.compute(restaurantId, (id, old) -> versionFor(id).get() == version ? new Entry(version, text) : old);
+        return text;
+    }
+
+    /**
+     * Gets the rendered restaurant list, building it if it changed since last time
+     * @param renderer builds the text from the current data
+     * @return shared String
+     */
+    public String getListing(Supplier<String> renderer) {
+        long version = listingVersion.get();
+        Entry entry = listing;
+        if (entry != null && entry.version == version) {
+            return entry.text;
+        }
+        String text = renderer.get();
+        synchronized (listingVersion) {
+            if (listingVersion.get() == version) {
+                listing = new Entry(version, text);
+            }
+        }
+        return text;
+    }
+
+    /**
+     * Marks a restaurant's menu as changed, call it after the change is in memory
+     * @param restaurantId UUID of the restaurant, null is ignored
+     */
+    public void invalidateMenu(UUID restaurantId) {
+        if (restaurantId == null) {
+            return;
+        }
+        versionFor(restaurantId).incrementAndGet();
+        menus.remove(restaurantId);
+    }
+
+    /**
+     * Marks the restaurant list as changed, call it after the change is in memory
+     */
+    public void invalidateListing() {
+        listingVersion.incrementAndGet();
+        listing = null;
+    }
+
+    /**
+     * Drops everything, like after the data files get reloaded
+     */
+    public void clear() {
+        for (AtomicLong version : menuVersions.values()) {
+            version.incrementAndGet();
+        }
+        menus.clear();
+        invalidateListing();
+    }
+
+    /**
+     * Gets how many menus are cached right now
+     * @return int
+     */
+    public int size() {
+        return menus.size();
+    }
+
+    private AtomicLong versionFor(UUID restaurantId) {
+        return menuVersions.computeIfAbsent(restaurantId, id -> new AtomicLong());
+    }
+}
@@ -76,11 +76,16 @@ public class Restaurant {
     }
 
     /**
-     * Gets a string representation of all menu items for this restaurant
+     * Gets a string representation of all menu items for this restaurant,
+     * built once and reused until the menu or the restaurant changes
      * @param fileManager The FileManager instance to query
      * @return String with all menu items
      */
     public String getMenuItemsToString(FileManager fileManager) {
+        return fileManager.getRenderCache().getMenu(restaurantId, () -> renderMenuItems(fileManager));
+    }
+
+    private String renderMenuItems(FileManager fileManager) {
         List<MenuItem> menuItems = fileManager.getMenuItemsForRestaurant(this.restaurantId);
         
         if (menuItems.isEmpty()) {
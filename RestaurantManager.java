@@ -114,10 +114,43 @@ public class RestaurantManager {
     }
 
     /**
-     * Gets a formatted string of all restaurants
+     * Searches restaurants by name or category via FileManager
+     * @param query Search text, prefixes and small typos are fine
+     * @param limit Most results to return
+     * @return List of Restaurant, best match first
+     */
+    public List<Restaurant> searchRestaurants(String query, int limit) {
+        return this.getFileManager().searchRestaurants(query, limit);
+    }
+
+    /**
+     * Searches menu items of every restaurant by name or category via FileManager
+     * @param query Search text, prefixes and small typos are fine
+     * @param limit Most results to return
+     * @return List of MenuItem, best match first
+     */
+    public List<MenuItem> searchMenuItems(String query, int limit) {
+        return this.getFileManager().searchMenuItems(query, limit);
+    }
+
+    /**
+     * Browses menu items by category, price range and restaurant via FileManager
+     * @param query Filters, sort order and page size
+     * @return Lazy pages of MenuItem, sorted by price
+     */
+    public MenuPriceIndex.Pages queryMenuItems(MenuQuery query) {
+        return this.getFileManager().queryMenuItems(query);
+    }
+
+    /**
+     * Gets a formatted string of all restaurants, built once and reused until a restaurant changes
      * @return Formatted string of all restaurants
      */
     public String getAllRestaurantsString() {
+        return this.getFileManager().getRenderCache().getListing(this::renderAllRestaurants);
+    }
+
+    private String renderAllRestaurants() {
         List<Restaurant> restaurants = this.getFileManager().getAllRestaurants();
         if (restaurants.isEmpty()) {
             return "No restaurants available.";
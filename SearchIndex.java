@@ -0,0 +1,520 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Full-text search over name + category, like the restaurants or the menu items.
+ * Text is split into lowercase words and each word points at the rows that contain it (an inverted index).
+ * A query word matches a stored word exactly, as a prefix ("tac" finds "tacos") or with one typo
+ * ("tacso", "burgrs"). Typos are found through a table of every word with one letter deleted, so
+ * nothing ever scans the whole vocabulary. FileManager keeps it up to date as rows change.
+ *
+ * Rows get a slot number in the order they're added and each word's postings are a sorted int array
+ * of slots, so a multi-word query is an intersection of int arrays instead of a map lookup per row.
+ * A changed row takes a new slot (keeps the arrays append-only), and the slots get renumbered once
+ * more than half of them are dead.
+ */
+public class SearchIndex {
+    private static final int NAME_WEIGHT = 2;
+    private static final int CATEGORY_WEIGHT = 1;
+    private static final int WEIGHT_BITS = 2; // a posting is slot << WEIGHT_BITS | field weight
+    private static final int WEIGHT_MASK = (1 << WEIGHT_BITS) - 1;
+    private static final int EXACT_SCORE = 3;
+    private static final int PREFIX_SCORE = 2;
+    private static final int FUZZY_SCORE = 1;
+    private static final int MIN_PREFIX_LENGTH = 2;
+    private static final int MIN_FUZZY_LENGTH = 4;
+    private static final int MAX_PREFIX_EXPANSIONS = 64; // keeps "s" or "ch" from touching every word
+    private static final int MIN_SLOTS_TO_COMPACT = 1024;
+
+    /**
+     * Sorted postings of one word
+     */
+    private static final class Postings {
+        private int[] entries = new int[2];
+        private int size;
+
+        void append(int entry) {
+            if (size == entries.length) {
+                entries = Arrays.copyOf(entries, size * 2);
+            }
+            entries[size++] = entry;
+        }
+
+        void remove(int slot) {
+            int lo = 0;
+            int hi = size - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int midSlot = entries[mid] >>> WEIGHT_BITS;
+                if (midSlot < slot) {
+                    lo = mid + 1;
+                } else if (midSlot > slot) {
+                    hi = mid - 1;
+                } else {
+                    System.arraycopy(entries, mid + 1, entries, mid, size - mid - 1);
+                    size--;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Rows matching one query word: sorted slots and the score each got
+     */
+    private static final class Matches {
+        private final int[] slots;
+        private final int[] scores;
+        private final int size;
+
+        Matches(int[] slots, int[] scores, int size) {
+            this.slots = slots;
+            this.scores = scores;
+            this.size = size;
+        }
+    }
+
+    /**
+     * A search hit while ranking
+     */
+    private static final class Hit {
+        private final int slot;
+        private final int score;
+
+        Hit(int slot, int score) {
+            this.slot = slot;
+            this.score = score;
+        }
+    }
+
+    private final NavigableMap<String, Postings> postings = new TreeMap<>(); // word -> rows containing it
+    private final Map<String, Set<String>> deletions = new HashMap<>(); // word with one letter gone -> words
+    private final Map<UUID, Integer> slotsById = new HashMap<>();
+    private UUID[] ids = new UUID[16]; // slot -> row id, null once the row is gone
+    private String[][] slotWords = new String[16][]; // slot -> its words, to take it back out
+    private int nextSlot;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Adds a row, or replaces it if the id is already indexed
+     * @param id UUID of the row
+     * @param name name text, counts more when ranking
+     * @param category category text
+     */
+    public void put(UUID id, String name, String category) {
+        if (id == null) {
+            return;
+        }
+        Map<String, Integer> words = new HashMap<>();
+        for (String word : tokenize(category)) {
+            words.put(word, CATEGORY_WEIGHT);
+        }
+        for (String word : tokenize(name)) {
+            words.put(word, NAME_WEIGHT);
+        }
+        lock.writeLock().lock();
+        try {
+            removeRow(id);
+            addRow(id, words);
+            compactIfSparse();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Takes a row out of the index
+     * @param id UUID of the row
+     */
+    public void remove(UUID id) {
+        if (id == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            removeRow(id);
+            compactIfSparse();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Empties the index
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            deletions.clear();
+            slotsById.clear();
+            ids = new UUID[16];
+            slotWords = new String[16][];
+            nextSlot = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Gets how many rows are indexed
+     * @return int
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return slotsById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the rows that match every word of the query, best first.
+     * Exact words beat prefixes beat typos, and a match in the name beats one in the category.
+     * @param query what the user typed
+     * @param limit most results to return
+     * @return ids, best match first, empty if nothing matched
+     */
+    public List<UUID> search(String query, int limit) {
+        Set<String> terms = new LinkedHashSet<>(tokenize(query));
+        if (terms.isEmpty() || limit < 1) {
+            return Collections.emptyList();
+        }
+        lock.readLock().lock();
+        try {
+            List<Matches> perTerm = new ArrayList<>(terms.size());
+            for (String term : terms) {
+                Matches matches = match(term);
+                if (matches.size == 0) {
+                    return Collections.emptyList();
+                }
+                perTerm.add(matches);
+            }
+            // Intersect smallest first so every step is cheap
+            perTerm.sort((a, b) -> Integer.compare(a.size, b.size));
+            Matches result = perTerm.get(0);
+            for (int i = 1; i < perTerm.size() && result.size > 0; i++) {
+                result = intersect(result, perTerm.get(i));
+            }
+            return top(result, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Splits text into lowercase words of letters and digits
+     * @param text anything, null is fine
+     * @return list of words
+     */
+    public static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null) {
+            return words;
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i++) {
+            boolean wordChar = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                words.add(lower.substring(start, i));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    private void addRow(UUID id, Map<String, Integer> words) {
+        if (nextSlot == ids.length) {
+            int grown = ids.length * 2;
+            ids = Arrays.copyOf(ids, grown);
+            slotWords = Arrays.copyOf(slotWords, grown);
+        }
+        int slot = nextSlot++;
+        ids[slot] = id;
+        slotWords[slot] = words.keySet().toArray(new String[0]);
+        slotsById.put(id, slot);
+        for (Map.Entry<String, Integer> entry : words.entrySet()) {
+            Postings list = postings.get(entry.getKey());
+            if (list == null) {
+                list = new Postings();
+                postings.put(entry.getKey(), list);
+                for (String deleted : deletesOf(entry.getKey())) {
+                    deletions.computeIfAbsent(deleted, d -> new HashSet<>()).add(entry.getKey());
+                }
+            }
+            list.append(slot << WEIGHT_BITS | entry.getValue()); // newest slot, so it goes on the end
+        }
+    }
+
+    private void removeRow(UUID id) {
+        Integer slot = slotsById.remove(id);
+        if (slot == null) {
+            return;
+        }
+        for (String word : slotWords[slot]) {
+            Postings list = postings.get(word);
+            if (list == null) {
+                continue;
+            }
+            list.remove(slot);
+            if (list.size == 0) {
+                postings.remove(word);
+                for (String deleted : deletesOf(word)) {
+                    Set<String> words = deletions.get(deleted);
+                    if (words != null) {
+                        words.remove(word);
+                        if (words.isEmpty()) {
+                            deletions.remove(deleted);
+                        }
+                    }
+                }
+            }
+        }
+        ids[slot] = null;
+        slotWords[slot] = null;
+    }
+
+    /**
+     * Renumbers the slots once most of them belong to removed or replaced rows
+     */
+    private void compactIfSparse() {
+        if (nextSlot < MIN_SLOTS_TO_COMPACT || slotsById.size() * 2 > nextSlot) {
+            return;
+        }
+        int[] renumbered = new int[nextSlot];
+        int live = 0;
+        for (int slot = 0; slot < nextSlot; slot++) {
+            if (ids[slot] == null) {
+                continue;
+            }
+            renumbered[slot] = live;
+            ids[live] = ids[slot];
+            slotWords[live] = slotWords[slot];
+            slotsById.put(ids[live], live);
+            live++;
+        }
+        // Live slots keep their order, so every postings array stays sorted
+        for (Postings list : postings.values()) {
+            for (int i = 0; i < list.size; i++) {
+                int entry = list.entries[i];
+                list.entries[i] = renumbered[entry >>> WEIGHT_BITS] << WEIGHT_BITS | (entry & WEIGHT_MASK);
+            }
+        }
+        Arrays.fill(ids, live, nextSlot, null);
+        Arrays.fill(slotWords, live, nextSlot, null);
+        nextSlot = live;
+    }
+
+    /**
+     * Gets every row a query word matches, with the best score per row
+     */
+    private Matches match(String term) {
+        Map<String, Integer> expansions = expand(term);
+        List<Matches> parts = new ArrayList<>(expansions.size());
+        for (Map.Entry<String, Integer> expansion : expansions.entrySet()) {
+            Postings list = postings.get(expansion.getKey());
+            int[] slots = new int[list.size];
+            int[] scores = new int[list.size];
+            for (int i = 0; i < list.size; i++) {
+                int entry = list.entries[i];
+                slots[i] = entry >>> WEIGHT_BITS;
+                scores[i] = expansion.getValue() * (entry & WEIGHT_MASK);
+            }
+            parts.add(new Matches(slots, scores, list.size));
+        }
+        if (parts.isEmpty()) {
+            return new Matches(new int[0], new int[0], 0);
+        }
+        // Always merge the two smallest, so a common word's long list is only copied once or twice
+        PriorityQueue<Matches> queue = new PriorityQueue<>(parts.size(), (x, y) -> Integer.compare(x.size, y.size));
+        queue.addAll(parts);
+        while (queue.size() > 1) {
+            queue.add(union(queue.poll(), queue.poll()));
+        }
+        return queue.poll();
+    }
+
+    /**
+     * Finds the stored words a query term matches and how well (exact, prefix or typo)
+     */
+    private Map<String, Integer> expand(String term) {
+        Map<String, Integer> matches = new HashMap<>();
+        if (term.length() >= MIN_PREFIX_LENGTH) {
+            int added = 0;
+            for (String word : postings.subMap(term, true, term + Character.MAX_VALUE, false).keySet()) {
+                matches.put(word, word.equals(term) ? EXACT_SCORE : PREFIX_SCORE);
+                if (++added == MAX_PREFIX_EXPANSIONS) {
+                    break;
+                }
+            }
+        }
+        if (postings.containsKey(term)) {
+            matches.put(term, EXACT_SCORE);
+        }
+        if (term.length() >= MIN_FUZZY_LENGTH) {
+            // A word one edit away shares a one-letter-deleted form with the term (or is one)
+            List<String> keys = deletesOf(term);
+            keys.add(term);
+            for (String key : keys) {
+                if (postings.containsKey(key) && withinOneEdit(term, key)) {
+                    matches.putIfAbsent(key, FUZZY_SCORE);
+                }
+                Set<String> words = deletions.get(key);
+                if (words == null) {
+                    continue;
+                }
+                for (String word : words) {
+                    if (withinOneEdit(term, word)) {
+                        matches.putIfAbsent(word, FUZZY_SCORE);
+                    }
+                }
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Rows in either, keeping the better score when a row is in both
+     */
+    private static Matches union(Matches a, Matches b) {
+        int[] slots = new int[a.size + b.size];
+        int[] scores = new int[a.size + b.size];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < a.size || j < b.size) {
+            if (j == b.size || (i < a.size && a.slots[i] < b.slots[j])) {
+                slots[n] = a.slots[i];
+                scores[n++] = a.scores[i++];
+            } else if (i == a.size || b.slots[j] < a.slots[i]) {
+                slots[n] = b.slots[j];
+                scores[n++] = b.scores[j++];
+            } else {
+                slots[n] = a.slots[i];
+                scores[n++] = Math.max(a.scores[i++], b.scores[j++]);
+            }
+        }
+        return new Matches(slots, scores, n);
+    }
+
+    /**
+     * Rows in both, scores added. Gallops through the bigger side so a rare word against a
+     * common one costs about the rare word's size.
+     */
+    private static Matches intersect(Matches small, Matches big) {
+        int[] slots = new int[small.size];
+        int[] scores = new int[small.size];
+        int n = 0;
+        int j = 0;
+        for (int i = 0; i < small.size && j < big.size; i++) {
+            int slot = small.slots[i];
+            int step = 1;
+            int hi = j;
+            while (hi < big.size && big.slots[hi] < slot) {
+                j = hi + 1;
+                hi += step;
+                step <<= 1;
+            }
+            hi = Math.min(hi, big.size - 1);
+            while (j <= hi) {
+                int mid = (j + hi) >>> 1;
+                if (big.slots[mid] < slot) {
+                    j = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            if (j < big.size && big.slots[j] == slot) {
+                slots[n] = slot;
+                scores[n++] = small.scores[i] + big.scores[j];
+            }
+        }
+        return new Matches(slots, scores, n);
+    }
+
+    /**
+     * Picks the best few rows with a small heap. Ties go to the older row, and since slots come in
+     * order a row only gets in if it beats the worst one kept outright.
+     */
+    private List<UUID> top(Matches matches, int limit) {
+        PriorityQueue<Hit> heap = new PriorityQueue<>(limit + 1, SearchIndex::compareWorstFirst);
+        for (int i = 0; i < matches.size; i++) {
+            int score = matches.scores[i];
+            if (heap.size() == limit && score <= heap.peek().score) {
+                continue;
+            }
+            heap.add(new Hit(matches.slots[i], score));
+            if (heap.size() > limit) {
+                heap.poll();
+            }
+        }
+        List<Hit> hits = new ArrayList<>(heap);
+        hits.sort((a, b) -> compareWorstFirst(b, a));
+        List<UUID> result = new ArrayList<>(hits.size());
+        for (Hit hit : hits) {
+            result.add(ids[hit.slot]);
+        }
+        return result;
+    }
+
+    /**
+     * Lower score first, then newer slot first, so the heap drops the worst hit
+     */
+    private static int compareWorstFirst(Hit a, Hit b) {
+        if (a.score != b.score) {
+            return Integer.compare(a.score, b.score);
+        }
+        return Integer.compare(b.slot, a.slot);
+    }
+
+    private static List<String> deletesOf(String word) {
+        List<String> deletes = new ArrayList<>(word.length());
+        for (int i = 0; i < word.length(); i++) {
+            deletes.add(word.substring(0, i) + word.substring(i + 1));
+        }
+        return deletes;
+    }
+
+    /**
+     * True if one insert, delete, change or swap of neighbours turns a into b
+     */
+    private static boolean withinOneEdit(String a, String b) {
+        if (a.equals(b)) {
+            return true;
+        }
+        int la = a.length();
+        int lb = b.length();
+        if (Math.abs(la - lb) > 1) {
+            return false;
+        }
+        int i = 0;
+        while (i < la && i < lb && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        if (la == lb) {
+            if (a.regionMatches(i + 1, b, i + 1, la - i - 1)) {
+                return true; // one change
+            }
+            return i + 1 < la && a.charAt(i) == b.charAt(i + 1) && a.charAt(i + 1) == b.charAt(i)
+                && a.regionMatches(i + 2, b, i + 2, la - i - 2); // one swap
+        }
+        return la > lb ? a.regionMatches(i + 1, b, i, lb - i) : b.regionMatches(i + 1, a, i, la - i);
+    }
+}
@@ -0,0 +1,545 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Serves many users from one process over a local socket, one virtual thread per connection
+ * (a pooled platform thread per connection when the JDK is older than 21 and has no virtual threads).
+ * The server owns the managers (FileManager, OrderManager, DriverPool, DispatchEngine) and every
+ * connection gets a Session, an AppController sharing them with its own logged in user.
+ *
+ * Line protocol, one command per line. Replies are "OK ..." or "ERR ...", lists are "OK n" and n lines.
+ *   LOGIN CUSTOMER|DRIVER|ADMIN username, LOGOUT, QUIT, HELP
+ *   RESTAURANTS, MENU restaurantId, SEARCH words..., BROWSE category|* [minPrice [maxPrice [page]]]
+ *   customer: ORDER itemId itemId..., ORDERS, STATUS orderId, CANCEL orderId, RATE 1-5
+ *   driver:   AVAILABLE true|false, ACCEPT, CURRENT, PICKUP, DELIVER
+ *
+ * java SessionServer [port]   (or Main --server [port]), default port 7070
+ */
+public class SessionServer extends AppController {
+    public static final int DEFAULT_PORT = 7070;
+    private static final int IDLE_TIMEOUT_MILLIS = 30 * 60 * 1000; // drop connections quiet for half an hour
+    private static final int SEARCH_LIMIT = 20; // results per kind for SEARCH
+    private static final int BROWSE_PAGE_SIZE = 20;
+    private static final String HELP = "Commands: LOGIN CUSTOMER|DRIVER|ADMIN username, LOGOUT, RESTAURANTS, MENU restaurantId, SEARCH words..., "
+        + "BROWSE category|* [minPrice [maxPrice [page]]], ORDER itemId..., ORDERS, STATUS orderId, CANCEL orderId, RATE 1-5, "
+        + "AVAILABLE true|false, ACCEPT, CURRENT, PICKUP, DELIVER, QUIT";
+
+    private final int port;
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private final LongAdder sessionsOpened = MetricsRegistry.getDefault().counter("sessions.opened");
+    private final LatencyHistogram commandLatency = MetricsRegistry.getDefault().histogram("sessions.command");
+    private volatile ServerSocket serverSocket;
+    private volatile ExecutorService executor;
+
+    /**
+     * Constructor for SessionServer, loads the data files like the CLI does
+     * @param port local port to listen on, 0 picks a free one
+     */
+    public SessionServer(int port) {
+        super();
+        this.port = port;
+        MetricsRegistry.getDefault().gauge("sessions.active", connections::size);
+    }
+
+    /**
+     * Listens on localhost and serves connections until shutdown, blocks the calling thread
+     */
+    @Override
+    public void start() {
+        try {
+            serverSocket = new ServerSocket(port, 1024, InetAddress.getLoopbackAddress());
+        } catch (IOException e) {
+            System.err.println("Error listening on port " + port + ": " + e.getMessage());
+            return;
+        }
+        executor = newConnectionExecutor();
+        System.out.println("PasoEats session server listening on " + serverSocket.getLocalSocketAddress());
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    System.err.println("Error accepting connection: " + e.getMessage());
+                }
+                continue;
+            }
+            connections.add(socket);
+            sessionsOpened.increment();
+            executor.execute(() -> serve(socket));
+        }
+    }
+
+    /**
+     * Virtual threads are looked up rather than called, so the tree still builds and runs on JDK 17
+     * @return virtual thread per task executor on JDK 21+, otherwise a cached pool of daemon threads
+     */
+    private static ExecutorService newConnectionExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger threads = new AtomicInteger();
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "session-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Gets the port the server is listening on
+     * @return port, -1 before start
+     */
+    public int getLocalPort() {
+        ServerSocket socket = serverSocket;
+        return socket == null ? -1 : socket.getLocalPort();
+    }
+
+    /**
+     * Gets how many connections are open
+     * @return int
+     */
+    public int getSessionCount() {
+        return connections.size();
+    }
+
+    /**
+     * Closes every connection, stops dispatching and writes everything out
+     */
+    @Override
+    public void shutdown() {
+        ServerSocket socket = serverSocket;
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                System.err.println("Error closing server socket: " + e.getMessage());
+            }
+        }
+        for (Socket connection : connections) {
+            closeQuietly(connection);
+        }
+        ExecutorService running = executor;
+        if (running != null) {
+            running.shutdownNow();
+        }
+        getDispatchEngine().stop();
+        getOrderManager().close();
+        getFileManager().close();
+        MetricsRegistry.getDefault().stopExport();
+    }
+
+    private void serve(Socket socket) {
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            socket.setSoTimeout(IDLE_TIMEOUT_MILLIS);
+            Session session = new Session(this);
+            out.print("OK PasoEats, type HELP for commands\n");
+            out.flush();
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if (line.equalsIgnoreCase("QUIT")) {
+                    out.print("OK bye\n");
+                    out.flush();
+                    break;
+                }
+                long start = System.nanoTime();
+                out.print(session.handle(line));
+                out.flush();
+                commandLatency.record(System.nanoTime() - start);
+            }
+        } catch (SocketTimeoutException e) {
+            // idle too long, just hang up
+        } catch (IOException e) {
+            if (!socket.isClosed()) {
+                System.err.println("Session error: " + e.getMessage());
+            }
+        } finally {
+            connections.remove(socket);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // closing anyway
+        }
+    }
+
+    /**
+     * One connected user. Only its own connection thread touches it, so the login fields need no locking.
+     */
+    static final class Session extends AppController {
+        Session(AppController shared) {
+            super(shared);
+        }
+
+        @Override
+        public void start() {}
+
+        @Override
+        public void shutdown() {
+            logout();
+        }
+
+        /**
+         * Runs one command
+         * @param line command line from the client
+         * @return reply lines, each ending in \n
+         */
+        String handle(String line) {
+            String[] parts = line.split("\\s+");
+            String command = parts[0].toUpperCase(Locale.ROOT);
+            String[] args = Arrays.copyOfRange(parts, 1, parts.length);
+            try {
+                switch (command) {
+                    case "HELP": return ok(HELP);
+                    case "LOGIN": return login(args);
+                    case "LOGOUT":
+                        logout();
+                        return ok("logged out");
+                    case "RESTAURANTS": return restaurants();
+                    case "MENU": return menu(args);
+                    case "SEARCH": return search(args);
+                    case "BROWSE": return browse(args);
+                    case "ORDER": return order(args);
+                    case "ORDERS": return orders();
+                    case "STATUS": return status(args);
+                    case "CANCEL": return cancel(args);
+                    case "RATE": return rate(args);
+                    case "AVAILABLE": return available(args);
+                    case "ACCEPT": return accept();
+                    case "CURRENT": return current();
+                    case "PICKUP": return advance(OrderManager.Status.ACCEPTED, OrderManager.Status.IN_PROGRESS);
+                    case "DELIVER": return advance(OrderManager.Status.IN_PROGRESS, OrderManager.Status.DELIVERED);
+                    default: return error("Unknown command " + parts[0] + ", try HELP");
+                }
+            } catch (IllegalArgumentException e) { // bad UUIDs and numbers
+                return error(e.getMessage());
+            } catch (RuntimeException e) {
+                System.err.println("Error running " + command + ": " + e);
+                return error("Something went wrong running " + command);
+            }
+        }
+
+        private String login(String[] args) {
+            if (args.length != 2) {
+                return error("Usage: LOGIN CUSTOMER|DRIVER|ADMIN username");
+            }
+            logout();
+            switch (args[0].toUpperCase(Locale.ROOT)) {
+                case "CUSTOMER":
+                    Customer customer = loginCustomer(args[1]);
+                    return customer == null ? error("No customer " + args[1]) : ok("customer " + customer.getId());
+                case "DRIVER":
+                    Driver driver = loginDriver(args[1]);
+                    return driver == null ? error("No driver " + args[1]) : ok("driver " + driver.getId());
+                case "ADMIN":
+                    Administrator admin = loginAdministrator(args[1]);
+                    return admin == null ? error("No administrator " + args[1]) : ok("admin " + admin.getId());
+                default:
+                    return error("Role must be CUSTOMER, DRIVER or ADMIN");
+            }
+        }
+
+        private String restaurants() {
+            List<String> lines = new ArrayList<>();
+            for (Restaurant restaurant : getAllRestaurants()) {
+                lines.add(restaurant.getRestaurantId() + ", " + restaurant.getName() + ", " + restaurant.getCategory());
+            }
+            return list(lines);
+        }
+
+        private String menu(String[] args) {
+            if (args.length != 1) {
+                return error("Usage: MENU restaurantId");
+            }
+            UUID restaurantId = UUID.fromString(args[0]);
+            if (getFileManager().getRestaurant(restaurantId) == null) {
+                return error("No restaurant " + restaurantId);
+            }
+            List<String> lines = new ArrayList<>();
+            for (MenuItem item : getFileManager().getMenuItemsForRestaurant(restaurantId)) {
+                lines.add(item.getItemId() + ", " + item.getName() + ", " + item.getCategory() + ", " + Money.format(item.getPriceCents()));
+            }
+            return list(lines);
+        }
+
+        /**
+         * Restaurants come back as "RESTAURANT id, name, category", then items as "ITEM id, name, category, price, restaurantId"
+         */
+        private String search(String[] args) {
+            if (args.length == 0) {
+                return error("Usage: SEARCH words...");
+            }
+            String query = String.join(" ", args);
+            List<String> lines = new ArrayList<>();
+            for (Restaurant restaurant : searchRestaurants(query, SEARCH_LIMIT)) {
+                lines.add("RESTAURANT " + restaurant.getRestaurantId() + ", " + restaurant.getName() + ", " + restaurant.getCategory());
+            }
+            for (MenuItem item : searchMenuItems(query, SEARCH_LIMIT)) {
+                lines.add("ITEM " + item.getItemId() + ", " + item.getName() + ", " + item.getCategory() + ", "
+                    + Money.format(item.getPriceCents()) + ", " + item.getRestaurantId());
+            }
+            return list(lines);
+        }
+
+        /**
+         * Cheapest first, a page at a time, items as "id, name, category, price, restaurantId"
+         */
+        private String browse(String[] args) {
+            if (args.length == 0 || args.length > 4) {
+                return error("Usage: BROWSE category|* [minPrice [maxPrice [page]]]");
+            }
+            MenuQuery query = new MenuQuery();
+            if (!args[0].equals("*")) {
+                query.setCategory(args[0]);
+            }
+            query.setPriceRangeCents(args.length > 1 ? Money.parse(args[1]) : 0, args.length > 2 ? Money.parse(args[2]) : Long.MAX_VALUE);
+            query.setPageSize(BROWSE_PAGE_SIZE);
+            int page = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+            if (page < 1) {
+                return error("Pages start at 1");
+            }
+            MenuPriceIndex.Pages pages = queryMenuItems(query).skip(page - 1);
+            List<String> lines = new ArrayList<>();
+            if (pages.hasNext()) {
+                for (MenuItem item : pages.next()) {
+                    lines.add(item.getItemId() + ", " + item.getName() + ", " + item.getCategory() + ", "
+                        + Money.format(item.getPriceCents()) + ", " + item.getRestaurantId());
+                }
+            }
+            return list(lines);
+        }
+
+        private String order(String[] args) {
+            if (currentUserRole != UserRole.CUSTOMER) {
+                return error("Log in as a customer first");
+            }
+            if (args.length == 0) {
+                return error("Usage: ORDER itemId itemId...");
+            }
+            List<String> items = Arrays.asList(args);
+            OrderPricer.Quote quote = getFileManager().getOrderPricer().quote(items);
+            if (!quote.isValid()) {
+                return error(quote.getError());
+            }
+            OrderManager.Order order = placeOrder(currentUserID, items, quote); // priced once, the quote goes along
+            if (order == null) {
+                return error("Order wasn't placed");
+            }
+            return ok(order.getId() + " " + Money.format(order.getTotalCents()));
+        }
+
+        private String orders() {
+            if (currentUserRole != UserRole.CUSTOMER) {
+                return error("Log in as a customer first");
+            }
+            Collection<OrderManager.Order> orders = getOrderManager().getOrdersForCustomer(currentUserID);
+            List<String> lines = new ArrayList<>();
+            for (OrderManager.Order order : orders) {
+                lines.add(describe(order));
+            }
+            return list(lines);
+        }
+
+        private String status(String[] args) {
+            if (args.length != 1) {
+                return error("Usage: STATUS orderId");
+            }
+            OrderManager.Order order = ownOrder(UUID.fromString(args[0]));
+            return order == null ? error("No such order") : ok(describe(order));
+        }
+
+        private String cancel(String[] args) {
+            if (args.length != 1) {
+                return error("Usage: CANCEL orderId");
+            }
+            OrderManager.Order order = ownOrder(UUID.fromString(args[0]));
+            if (order == null) {
+                return error("No such order");
+            }
+            return getDispatchEngine().cancel(order.getId()) ? ok("cancelled") : error("Order is already " + order.getStatus());
+        }
+
+        /**
+         * Rates the driver of the newest order that got one, like the CLI does
+         */
+        private String rate(String[] args) {
+            if (currentUserRole != UserRole.CUSTOMER) {
+                return error("Log in as a customer first");
+            }
+            if (args.length != 1) {
+                return error("Usage: RATE 1-5");
+            }
+            int rating = Integer.parseInt(args[0]);
+            if (rating < 1 || rating > 5) {
+                return error("Rating must be between 1 and 5");
+            }
+            OrderManager.Order order = getOrderManager().getLatestDispatchedOrderForCustomer(currentUserID);
+            Driver driver = order == null ? null : getFileManager().getDriver(order.getAssignedDriverId());
+            if (driver == null) {
+                return error("No orders with a driver yet");
+            }
+            synchronized (driver) { // other customers can be rating the same driver
+                driver.addRating(rating);
+                getFileManager().updateDriver(driver.getId(), driver.isAvailable(), driver.getAvgRating());
+            }
+            getDriverPool().updateRating(driver);
+            return ok(String.format("%.1f", driver.getAvgRating()));
+        }
+
+        private String available(String[] args) {
+            Driver driver = currentDriver();
+            if (driver == null) {
+                return error("Log in as a driver first");
+            }
+            if (args.length != 1) {
+                return error("Usage: AVAILABLE true|false");
+            }
+            boolean available = Boolean.parseBoolean(args[0]);
+            if (available && driver.getCurrentOrder() != null) {
+                return error("Finish your current order first");
+            }
+            driver.setAvailable(available);
+            getFileManager().updateDriver(driver.getId(), available, driver.getAvgRating());
+            if (available) {
+                getDispatchEngine().driverAvailable(driver);
+            } else {
+                getDriverPool().removeDriver(driver);
+            }
+            return ok(available ? "available" : "unavailable");
+        }
+
+        private String accept() {
+            Driver driver = currentDriver();
+            if (driver == null) {
+                return error("Log in as a driver first");
+            }
+            if (driver.getCurrentOrder() != null) {
+                return error("You already have an active order");
+            }
+            if (!driver.isAvailable()) {
+                return error("You are not available");
+            }
+            OrderManager.Order order = getDispatchEngine().acceptNextFor(driver);
+            return order == null ? ok("none") : ok(describe(order));
+        }
+
+        private String current() {
+            Driver driver = currentDriver();
+            if (driver == null) {
+                return error("Log in as a driver first");
+            }
+            UUID orderId = driver.getCurrentOrder();
+            OrderManager.Order order = orderId == null ? null : getOrderManager().get(orderId);
+            return order == null ? ok("none") : ok(describe(order));
+        }
+
+        private String advance(OrderManager.Status from, OrderManager.Status to) {
+            Driver driver = currentDriver();
+            if (driver == null) {
+                return error("Log in as a driver first");
+            }
+            UUID orderId = driver.getCurrentOrder();
+            OrderManager.Order order = orderId == null ? null : getOrderManager().get(orderId);
+            if (order == null) {
+                return error("You don't have a current order");
+            }
+            if (order.getStatus() != from || !driver.updateOrderStatus(getOrderManager(), to)) {
+                return error("Order is " + order.getStatus());
+            }
+            if (to == OrderManager.Status.DELIVERED) {
+                driver.setCurrentOrder(null);
+                driver.setAvailable(true);
+                getFileManager().updateDriver(driver.getId(), true, driver.getAvgRating());
+                getDispatchEngine().driverAvailable(driver);
+            }
+            return ok(describe(order));
+        }
+
+        private Driver currentDriver() {
+            return currentUserRole == UserRole.DRIVER ? getFileManager().getDriver(currentUserID) : null;
+        }
+
+        /**
+         * Gets an order the logged in user is allowed to see (their own, or any for admins)
+         */
+        private OrderManager.Order ownOrder(UUID orderId) {
+            OrderManager.Order order = getOrderManager().get(orderId);
+            if (order == null || currentUserRole == UserRole.ADMINISTRATOR) {
+                return order;
+            }
+            if (currentUserRole == UserRole.CUSTOMER && order.getCustomerId().equals(currentUserID)) {
+                return order;
+            }
+            if (currentUserRole == UserRole.DRIVER && currentUserID.equals(order.getAssignedDriverId())) {
+                return order;
+            }
+            return null;
+        }
+
+        private static String describe(OrderManager.Order order) {
+            UUID driverId = order.getAssignedDriverId();
+            return order.getId() + " " + order.getStatus() + " " + Money.format(order.getTotalCents()) + " " + (driverId == null ? "-" : driverId);
+        }
+
+        private static String ok(String message) {
+            return "OK " + message + "\n";
+        }
+
+        private static String error(String message) {
+            return "ERR " + message + "\n";
+        }
+
+        private static String list(List<String> lines) {
+            StringBuilder sb = new StringBuilder("OK ").append(lines.size()).append("\n");
+            for (String line : lines) {
+                sb.append(line).append("\n");
+            }
+            return sb.toString();
+        }
+    }
+
+    public static void main(String[] args) {
+        int port = DEFAULT_PORT;
+        if (args.length > 0) {
+            try {
+                port = Integer.parseInt(args[0]);
+            } catch (NumberFormatException e) {
+                System.err.println("Port must be a number: " + args[0]);
+                System.exit(2);
+            }
+        }
+        SessionServer server = new SessionServer(port);
+        Runtime.getRuntime().addShutdownHook(new Thread(server::shutdown, "session-server-shutdown"));
+        server.start();
+    }
+}
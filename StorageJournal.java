@@ -0,0 +1,246 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Append-only log of updates and removes against the data files.
+ * The data files are treated as snapshots: a change is one appended journal line,
+ * and the compactor folds the journal back into the snapshots in the background.
+ *
+ * Record format (one per line):
+ *   U|filename|id|new line
+ *   D|filename|id
+ */
+public class StorageJournal {
+    private static final String JOURNAL_FILE = "journal.log";
+    private static final String COMPACTING_FILE = "journal.log.compacting";
+    private static final String UPDATE = "U";
+    private static final String REMOVE = "D";
+    private final Path dataDirectory;
+    private final Path journalPath;
+    private final Path compactingPath;
+    private final Function<String, Object> fileLocks;
+    private final Object journalLock; // shared with journals on the same folder, through fileLocks
+    private final Object compactLock;
+    private final Consumer<String> pendingWrites;
+    private final int compactThreshold;
+    private final long compactIntervalSeconds;
+    private int pendingRecords;
+    private ScheduledExecutorService compactor;
+    private final LatencyHistogram compactLatency = MetricsRegistry.getDefault().histogram("file.compact");
+
+    /**
+     * Constructor for StorageJournal
+     * @param fileLocks gives the lock object guarding writes to a data file
+     * @param pendingWrites flushes appends still queued for a data file, so a fold never runs ahead of them
+     * @param options storage settings (threshold and interval)
+     */
+    public StorageJournal(Function<String, Object> fileLocks, Consumer<String> pendingWrites, StorageOptions options) {
+        this.dataDirectory = options.getDataDirectory();
+        this.journalPath = dataDirectory.resolve(JOURNAL_FILE);
+        this.compactingPath = dataDirectory.resolve(COMPACTING_FILE);
+        this.fileLocks = fileLocks;
+        this.journalLock = fileLocks.apply(JOURNAL_FILE);
+        this.compactLock = fileLocks.apply(COMPACTING_FILE);
+        this.pendingWrites = pendingWrites;
+        this.compactThreshold = options.getCompactThreshold();
+        this.compactIntervalSeconds = options.getCompactIntervalSeconds();
+    }
+
+    /**
+     * Starts the background compactor
+     */
+    public void start() {
+        synchronized (compactLock) {
+            if (compactor != null) {
+                return;
+            }
+            compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "journal-compactor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            compactor.scheduleWithFixedDelay(this::compact, compactIntervalSeconds, compactIntervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Stops the compactor and folds whatever is left into the data files
+     */
+    public void close() {
+        ScheduledExecutorService running;
+        synchronized (compactLock) {
+            running = compactor;
+            compactor = null;
+        }
+        if (running != null) {
+            running.shutdownNow();
+        }
+        compact();
+    }
+
+    /**
+     * Records a line replacement for the given id
+     * @param filename data file the line lives in
+     * @param id id at the start of the line
+     * @param newLine full replacement line
+     * @return true if the record was written
+     */
+    public boolean recordUpdate(String filename, String id, String newLine) {
+        return append(UPDATE + "|" + filename + "|" + id + "|" + newLine);
+    }
+
+    /**
+     * Records a removal of the line for the given id
+     * @param filename data file the line lives in
+     * @param id id at the start of the line
+     * @return true if the record was written
+     */
+    public boolean recordRemove(String filename, String id) {
+        return append(REMOVE + "|" + filename + "|" + id);
+    }
+
+    private boolean append(String record) {
+        boolean compactNow;
+        synchronized (journalLock) {
+            try {
+                Files.write(journalPath, (record + System.lineSeparator()).getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                System.err.println("Error appending to " + JOURNAL_FILE + ": " + e.getMessage());
+                return false;
+            }
+            pendingRecords++;
+            compactNow = pendingRecords >= compactThreshold;
+            if (compactNow) {
+                pendingRecords = 0;
+            }
+        }
+        if (compactNow) {
+            triggerCompaction();
+        }
+        return true;
+    }
+
+    private void triggerCompaction() {
+        synchronized (compactLock) {
+            if (compactor != null) {
+                compactor.execute(this::compact);
+            }
+        }
+    }
+
+    /**
+     * Folds the journal into the data files. Safe to call at any time, records
+     * written while a fold is running land in a fresh journal and wait for the next one.
+     * Also used at startup to recover whatever the last run didn't get to.
+     * @return true if everything was folded
+     */
+    public boolean compact() {
+        synchronized (compactLock) {
+            try {
+                // Leftover from a run that died mid-fold. Folding is idempotent so just redo it.
+                if (Files.exists(compactingPath)) {
+                    fold(compactingPath);
+                    Files.delete(compactingPath);
+                }
+                synchronized (journalLock) {
+                    if (!Files.exists(journalPath) || Files.size(journalPath) == 0) {
+                        return true;
+                    }
+                    Files.move(journalPath, compactingPath, StandardCopyOption.ATOMIC_MOVE);
+                    pendingRecords = 0;
+                }
+                long start = System.nanoTime();
+                fold(compactingPath);
+                Files.delete(compactingPath);
+                compactLatency.record(System.nanoTime() - start);
+                return true;
+            } catch (IOException e) {
+                System.err.println("Error compacting " + JOURNAL_FILE + ": " + e.getMessage());
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Throws away the journal without folding it (used when the data files get reset)
+     */
+    public void clear() {
+        synchronized (compactLock) {
+            synchronized (journalLock) {
+                try {
+                    Files.deleteIfExists(journalPath);
+                    Files.deleteIfExists(compactingPath);
+                    pendingRecords = 0;
+                } catch (IOException e) {
+                    System.err.println("Error clearing " + JOURNAL_FILE + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void fold(Path journal) throws IOException {
+        // filename -> (id -> replacement line, null means removed). Last record for an id wins.
+        Map<String, Map<String, String>> changes = new LinkedHashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(journal, StandardCharsets.UTF_8)) {
+            String record;
+            while ((record = reader.readLine()) != null) {
+                String[] parts = record.split("\\|", 4);
+                if (parts.length < 3) {
+                    continue; // torn write at the tail, nothing we can do with it
+                }
+                Map<String, String> fileChanges = changes.computeIfAbsent(parts[1], f -> new HashMap<>());
+                if (parts[0].equals(UPDATE) && parts.length == 4) {
+                    fileChanges.put(parts[2], parts[3]);
+                } else if (parts[0].equals(REMOVE)) {
+                    fileChanges.put(parts[2], null);
+                }
+            }
+        }
+        for (Map.Entry<String, Map<String, String>> entry : changes.entrySet()) {
+            pendingWrites.accept(entry.getKey());
+            synchronized (fileLocks.apply(entry.getKey())) {
+                rewrite(dataDirectory.resolve(entry.getKey()), entry.getValue());
+            }
+        }
+    }
+
+    private void rewrite(Path file, Map<String, String> fileChanges) throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+             BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String trimmed = line.trim();
+                if (!trimmed.isEmpty() && !trimmed.startsWith("#")) {
+                    String id = lineId(trimmed);
+                    if (fileChanges.containsKey(id)) {
+                        line = fileChanges.get(id);
+                        if (line == null) {
+                            continue;
+                        }
+                    }
+                }
+                writer.write(line);
+                writer.newLine();
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String lineId(String line) {
+        int comma = line.indexOf(',');
+        return (comma < 0 ? line : line.substring(0, comma)).trim();
+    }
+}
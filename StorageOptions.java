@@ -0,0 +1,210 @@
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Settings for how FileManager keeps its data files on disk.
+ * Defaults are what the CLI uses, tweak them for tests or tooling.
+ */
+public class StorageOptions {
+    /**
+     * How orders are kept on disk
+     */
+    public enum OrderFormat {
+        TEXT,    // orders.txt, one comma separated line per order
+        SEGMENT  // orders.seg + orders.items, fixed-width binary records (see OrderSegmentStore)
+    }
+
+    private boolean journaled = true;
+    private int compactThreshold = 1000;
+    private long compactIntervalSeconds = 30;
+    private int groupCommitMaxBatch = 256;
+    private long groupCommitMaxLatencyMillis = 2;
+    private OrderFormat orderFormat = OrderFormat.TEXT;
+    private boolean archiveDelivered = Boolean.getBoolean("pasoeats.archiveDelivered");
+    private long archiveGraceSeconds = 600;
+    private boolean reportStartup = Boolean.getBoolean("pasoeats.reportStartup");
+    private Path dataDirectory = Paths.get(System.getProperty("pasoeats.dataDir", ""));
+
+    /**
+     * Checks if updates and removes go through the journal instead of rewriting the data file
+     * @return true if journaled
+     */
+    public boolean isJournaled() {
+        return journaled;
+    }
+
+    /**
+     * Sets if updates and removes go through the journal
+     * @param journaled false to rewrite the whole data file on every change (the old way)
+     */
+    public void setJournaled(boolean journaled) {
+        this.journaled = journaled;
+    }
+
+    /**
+     * Gets how many journal records can pile up before a compaction is kicked off
+     * @return record count
+     */
+    public int getCompactThreshold() {
+        return compactThreshold;
+    }
+
+    /**
+     * Sets how many journal records can pile up before a compaction is kicked off
+     * @param compactThreshold record count, must be positive
+     */
+    public void setCompactThreshold(int compactThreshold) {
+        if (compactThreshold < 1) {
+            throw new IllegalArgumentException("Compact threshold must be positive");
+        }
+        this.compactThreshold = compactThreshold;
+    }
+
+    /**
+     * Gets how often the background compactor runs even if the threshold isn't hit
+     * @return interval in seconds
+     */
+    public long getCompactIntervalSeconds() {
+        return compactIntervalSeconds;
+    }
+
+    /**
+     * Sets how often the background compactor runs even if the threshold isn't hit
+     * @param compactIntervalSeconds interval in seconds, must be positive
+     */
+    public void setCompactIntervalSeconds(long compactIntervalSeconds) {
+        if (compactIntervalSeconds < 1) {
+            throw new IllegalArgumentException("Compact interval must be positive");
+        }
+        this.compactIntervalSeconds = compactIntervalSeconds;
+    }
+
+    /**
+     * Gets the most lines a group commit writes in one go
+     * @return line count
+     */
+    public int getGroupCommitMaxBatch() {
+        return groupCommitMaxBatch;
+    }
+
+    /**
+     * Sets the most lines a group commit writes in one go
+     * @param groupCommitMaxBatch line count, must be positive
+     */
+    public void setGroupCommitMaxBatch(int groupCommitMaxBatch) {
+        if (groupCommitMaxBatch < 1) {
+            throw new IllegalArgumentException("Group commit batch must be positive");
+        }
+        this.groupCommitMaxBatch = groupCommitMaxBatch;
+    }
+
+    /**
+     * Gets how long the first line of a group commit waits for more lines
+     * @return latency in milliseconds
+     */
+    public long getGroupCommitMaxLatencyMillis() {
+        return groupCommitMaxLatencyMillis;
+    }
+
+    /**
+     * Sets how long the first line of a group commit waits for more lines
+     * @param groupCommitMaxLatencyMillis latency in milliseconds, 0 writes whatever is queued right away
+     */
+    public void setGroupCommitMaxLatencyMillis(long groupCommitMaxLatencyMillis) {
+        if (groupCommitMaxLatencyMillis < 0) {
+            throw new IllegalArgumentException("Group commit latency can't be negative");
+        }
+        this.groupCommitMaxLatencyMillis = groupCommitMaxLatencyMillis;
+    }
+
+    /**
+     * Gets how orders are kept on disk
+     * @return OrderFormat
+     */
+    public OrderFormat getOrderFormat() {
+        return orderFormat;
+    }
+
+    /**
+     * Sets how orders are kept on disk. Switching to SEGMENT converts orders.txt on first start and
+     * orders.txt isn't updated after that, see OrderSegmentStore for going back to TEXT.
+     * @param orderFormat OrderFormat
+     */
+    public void setOrderFormat(OrderFormat orderFormat) {
+        if (orderFormat == null) {
+            throw new IllegalArgumentException("Order format can't be null");
+        }
+        this.orderFormat = orderFormat;
+    }
+
+    /**
+     * Checks if delivered orders get moved out of memory into the archive segments (see OrderArchive)
+     * @return true if archiving (defaults to the pasoeats.archiveDelivered system property)
+     */
+    public boolean isArchiveDelivered() {
+        return archiveDelivered;
+    }
+
+    /**
+     * Sets if delivered orders get moved out of memory into the archive segments
+     * @param archiveDelivered true to archive them once the grace period is over
+     */
+    public void setArchiveDelivered(boolean archiveDelivered) {
+        this.archiveDelivered = archiveDelivered;
+    }
+
+    /**
+     * Gets how long a delivered order stays in memory before it's archived
+     * @return grace period in seconds
+     */
+    public long getArchiveGraceSeconds() {
+        return archiveGraceSeconds;
+    }
+
+    /**
+     * Sets how long a delivered order stays in memory before it's archived
+     * @param archiveGraceSeconds grace period in seconds, 0 archives on the next sweep
+     */
+    public void setArchiveGraceSeconds(long archiveGraceSeconds) {
+        if (archiveGraceSeconds < 0) {
+            throw new IllegalArgumentException("Archive grace period can't be negative");
+        }
+        this.archiveGraceSeconds = archiveGraceSeconds;
+    }
+
+    /**
+     * Checks if FileManager prints how long each table took to load
+     * @return true if reporting (defaults to the pasoeats.reportStartup system property)
+     */
+    public boolean isReportStartup() {
+        return reportStartup;
+    }
+
+    /**
+     * Sets if FileManager prints how long each table took to load
+     * @param reportStartup true to print the startup report
+     */
+    public void setReportStartup(boolean reportStartup) {
+        this.reportStartup = reportStartup;
+    }
+
+    /**
+     * Gets the folder the data files live in
+     * @return Path (defaults to the pasoeats.dataDir system property, or the working directory)
+     */
+    public Path getDataDirectory() {
+        return dataDirectory;
+    }
+
+    /**
+     * Sets the folder the data files live in, it gets created if it's missing.
+     * Point tools and benchmarks at their own folder so they never touch the real data.
+     * @param dataDirectory folder for the data files
+     */
+    public void setDataDirectory(Path dataDirectory) {
+        if (dataDirectory == null) {
+            throw new IllegalArgumentException("Data directory can't be null");
+        }
+        this.dataDirectory = dataDirectory;
+    }
+}
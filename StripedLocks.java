@@ -0,0 +1,35 @@
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed set of locks picked by key hash.
+ * Two writers on the same key always get the same lock, writers on different keys
+ * almost never do, and we don't keep a lock object around per key.
+ */
+public class StripedLocks {
+    private final ReentrantLock[] stripes;
+    private final int mask;
+
+    /**
+     * Constructor for StripedLocks
+     * @param count number of stripes, rounded up to a power of two
+     */
+    public StripedLocks(int count) {
+        int size = Integer.highestOneBit(Math.max(1, count - 1) << 1);
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Gets the lock for a key
+     * @param key any key with a decent hashCode
+     * @return ReentrantLock shared by every key in the same stripe
+     */
+    public ReentrantLock lockFor(Object key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16); // spread the high bits, UUID hashes are fine but Strings cluster
+        return stripes[h & mask];
+    }
+}
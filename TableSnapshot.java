@@ -0,0 +1,44 @@
+import java.util.function.Supplier;
+
+/**
+ * Keeps one immutable copy of a table around until the table changes.
+ * Every reader shares the same copy, so hot read paths stop allocating a new one per call.
+ *
+ * Build (get) while holding the table's read lock and invalidate while holding its write lock,
+ * that way a copy built from old data can never be stored after the change that made it old.
+ * @param <T> snapshot type (an unmodifiable map or list)
+ */
+public class TableSnapshot<T> {
+    private volatile T snapshot;
+    private volatile long generation;
+
+    /**
+     * Gets the current snapshot, building it if the table changed since the last one
+     * @param builder makes a fresh immutable copy of the table
+     * @return shared snapshot
+     */
+    public T get(Supplier<T> builder) {
+        T current = snapshot;
+        if (current == null) {
+            current = builder.get();
+            snapshot = current;
+        }
+        return current;
+    }
+
+    /**
+     * Drops the snapshot, the next get builds a new one
+     */
+    public void invalidate() {
+        snapshot = null;
+        generation++;
+    }
+
+    /**
+     * Gets how many times the table changed, handy for telling if two reads saw the same data
+     * @return change count (only bumped under the table's write lock)
+     */
+    public long getGeneration() {
+        return generation;
+    }
+}
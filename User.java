@@ -51,7 +51,7 @@ abstract class User {
      * Gets a copy of the orders list
      * @return Copy of the orders list
      */
-    public ArrayList<UUID> getOrders() {
+    public synchronized ArrayList<UUID> getOrders() {
         return new ArrayList<>(orders);
     }
     
@@ -59,10 +59,10 @@ abstract class User {
      * Sets the orders list (replaces existing orders)
      * @param orders New orders list
      */
-    public void setOrders(ArrayList<UUID> orders) {
+    public synchronized void setOrders(ArrayList<UUID> orders) {
         this.orders = new ArrayList<>(orders);
     }
-    public void addOrder(UUID orderID){
+    public synchronized void addOrder(UUID orderID){
         orders.add(orderID);
     }
 }
\ No newline at end of file
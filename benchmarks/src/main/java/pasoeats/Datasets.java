@@ -0,0 +1,168 @@
+package pasoeats;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Writes generated data files in the same format FileManager reads, into a folder of their own.
+ * Same seed gives the same rows, so runs before and after a change load identical data.
+ */
+public final class Datasets {
+    private static final int ITEMS_PER_RESTAURANT = 10;
+    private static final int ITEMS_PER_ORDER = 3;
+    private static final String[] STATUSES = {"PLACED", "ACCEPTED", "PICKED_UP", "DELIVERED"};
+
+    private final Path directory;
+    private final List<UUID> restaurantIds = new ArrayList<>();
+    private final List<UUID> menuItemIds = new ArrayList<>();
+    private final List<UUID> customerIds = new ArrayList<>();
+    private final List<UUID> driverIds = new ArrayList<>();
+    private final List<UUID> orderIds = new ArrayList<>();
+
+    private Datasets(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Makes a temp folder and fills every table.
+     * Customers, drivers, menu items and orders get rows each, restaurants one per 10 menu items.
+     * @param rows rows per table
+     * @param seed Random seed
+     * @return Datasets with the ids that were written
+     */
+    public static Datasets generate(int rows, long seed) {
+        try {
+            Datasets data = new Datasets(Files.createTempDirectory("pasoeats-bench-"));
+            data.write(rows, new Random(seed));
+            return data;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Makes an empty temp folder, FileManager creates the files with just their headers
+     * @return Datasets with no ids
+     */
+    public static Datasets empty() {
+        try {
+            return new Datasets(Files.createTempDirectory("pasoeats-bench-"));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Storage settings pointed at this folder
+     * @return StorageOptions, start time report off
+     */
+    public StorageOptions options() {
+        StorageOptions options = new StorageOptions();
+        options.setDataDirectory(directory);
+        options.setReportStartup(false);
+        return options;
+    }
+
+    public Path getDirectory() { return directory; }
+    public List<UUID> getRestaurantIds() { return restaurantIds; }
+    public List<UUID> getMenuItemIds() { return menuItemIds; }
+    public List<UUID> getCustomerIds() { return customerIds; }
+    public List<UUID> getDriverIds() { return driverIds; }
+    public List<UUID> getOrderIds() { return orderIds; }
+
+    /**
+     * Deletes the folder and everything in it
+     */
+    public void delete() {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            System.err.println("Couldn't delete " + directory + ": " + e.getMessage());
+        }
+    }
+
+    private void write(int rows, Random random) throws IOException {
+        int restaurants = Math.max(1, rows / ITEMS_PER_RESTAURANT);
+        try (BufferedWriter out = open("restaurants.txt", "# Format: RestaurantId, Name, Category")) {
+            for (int i = 0; i < restaurants; i++) {
+                UUID id = uuid(random);
+                restaurantIds.add(id);
+                out.write(id + ", Restaurant " + i + ", Category " + (i % 20));
+                out.newLine();
+            }
+        }
+        try (BufferedWriter out = open("menu.txt", "# Format: ItemId, Name, Category, Price, RestaurantId")) {
+            for (int i = 0; i < rows; i++) {
+                UUID id = uuid(random);
+                menuItemIds.add(id);
+                long cents = 100 + random.nextInt(4900);
+                out.write(id + ", Item " + i + ", Category " + (i % 8) + ", " + Money.format(cents) + ", "
+                    + restaurantIds.get(i % restaurants));
+                out.newLine();
+            }
+        }
+        try (BufferedWriter out = open("customers.txt", "# Format: CustomerId, Username, Name, Email")) {
+            for (int i = 0; i < rows; i++) {
+                UUID id = uuid(random);
+                customerIds.add(id);
+                out.write(id + ", customer" + i + ", Customer " + i + ", customer" + i + "@example.com");
+                out.newLine();
+            }
+        }
+        try (BufferedWriter out = open("drivers.txt", "# Format: DriverId, Username, Name, Email, Available, AvgRating")) {
+            for (int i = 0; i < rows; i++) {
+                UUID id = uuid(random);
+                driverIds.add(id);
+                double rating = (random.nextInt(41) + 10) / 10.0;
+                out.write(id + ", driver" + i + ", Driver " + i + ", driver" + i + "@example.com, " + random.nextBoolean() + ", " + rating);
+                out.newLine();
+            }
+        }
+        try (BufferedWriter out = open("admins.txt", "# Format: AdminId, Username, Name, Email")) {
+            out.write(uuid(random) + ", admin, Admin, admin@example.com");
+            out.newLine();
+        }
+        try (BufferedWriter out = open("orders.txt", "# Format: OrderId, CustomerId, RestaurantId, ItemIds, Status, DriverId, CreatedAt, TotalPrice")) {
+            long createdAt = System.currentTimeMillis() - rows * 1000L;
+            for (int i = 0; i < rows; i++) {
+                UUID id = uuid(random);
+                orderIds.add(id);
+                int restaurant = random.nextInt(restaurants);
+                StringBuilder line = new StringBuilder(256);
+                line.append(id).append(", ").append(customerIds.get(random.nextInt(rows))).append(", ").append(restaurantIds.get(restaurant));
+                for (int j = 0; j < ITEMS_PER_ORDER; j++) {
+                    // Items of that restaurant sit at restaurant, restaurant + restaurants, ...
+                    int item = Math.min(rows - 1, restaurant + restaurants * random.nextInt(ITEMS_PER_RESTAURANT));
+                    line.append(j == 0 ? ", " : ",").append(menuItemIds.get(item));
+                }
+                String status = STATUSES[random.nextInt(STATUSES.length)];
+                String driver = status.equals("PLACED") ? "null" : driverIds.get(random.nextInt(rows)).toString();
+                line.append(", ").append(status).append(", ").append(driver).append(", ").append(createdAt + i * 1000L)
+                    .append(", ").append(Money.format(300 + random.nextInt(9700)));
+                out.write(line.toString());
+                out.newLine();
+            }
+        }
+    }
+
+    private BufferedWriter open(String filename, String header) throws IOException {
+        BufferedWriter out = Files.newBufferedWriter(directory.resolve(filename), StandardCharsets.UTF_8);
+        out.write(header);
+        out.newLine();
+        return out;
+    }
+
+    private static UUID uuid(Random random) {
+        return new UUID(random.nextLong(), random.nextLong());
+    }
+}
@@ -0,0 +1,77 @@
+package pasoeats;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * DriverPool take/return and the periodic sync with FileManager, with 10^3 to 10^6 drivers
+ * (about half of them available).
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DriverPoolBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Pool {
+        @Param({"1000", "10000", "100000", "1000000"})
+        public int rows;
+
+        Datasets data;
+        FileManager fileManager;
+        DriverPool driverPool;
+        Driver[] drivers;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            data = Datasets.generate(rows, 42);
+            fileManager = new FileManager(data.options());
+            driverPool = new DriverPool(fileManager);
+            Map<UUID, Driver> all = fileManager.getAllDrivers();
+            drivers = all.values().toArray(new Driver[0]);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            fileManager.close();
+            data.delete();
+        }
+    }
+
+    @Benchmark
+    public Driver takeAndReturn(Pool state) {
+        Driver driver = state.driverPool.getNextAvailableDriver();
+        if (driver != null) {
+            driver.setAvailable(true);
+            state.driverPool.addDriver(driver);
+        }
+        return driver;
+    }
+
+    @Benchmark
+    public int updatePoolDrivers(Pool state) {
+        // One driver goes on or off shift between syncs, like the simulator and the CLI do
+        Driver driver = state.drivers[ThreadLocalRandom.current().nextInt(state.drivers.length)];
+        driver.setAvailable(!driver.isAvailable());
+        state.driverPool.updatePoolDrivers(state.fileManager);
+        return state.driverPool.getPoolSize();
+    }
+}
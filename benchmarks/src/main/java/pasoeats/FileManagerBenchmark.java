@@ -0,0 +1,137 @@
+package pasoeats;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * FileManager startup load, order appends (one thread and several) and journaled updates
+ * against generated tables of 10^3 to 10^6 rows.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class FileManagerBenchmark {
+
+    /**
+     * Data files on disk, nothing loaded
+     */
+    @State(Scope.Benchmark)
+    public static class OnDisk {
+        @Param({"1000", "10000", "100000", "1000000"})
+        public int rows;
+
+        Datasets data;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            data = Datasets.generate(rows, 42);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            data.delete();
+        }
+    }
+
+    /**
+     * Data files loaded into one FileManager that the write benchmarks change
+     */
+    @State(Scope.Benchmark)
+    public static class Loaded {
+        @Param({"1000", "10000", "100000", "1000000"})
+        public int rows;
+
+        Datasets data;
+        FileManager fileManager;
+        UUID[] customerIds;
+        UUID[] restaurantIds;
+        UUID[] driverIds;
+        UUID[] orderIds;
+        List<UUID> itemIds;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            data = Datasets.generate(rows, 42);
+            fileManager = new FileManager(data.options());
+            customerIds = data.getCustomerIds().toArray(new UUID[0]);
+            restaurantIds = data.getRestaurantIds().toArray(new UUID[0]);
+            driverIds = data.getDriverIds().toArray(new UUID[0]);
+            orderIds = data.getOrderIds().toArray(new UUID[0]);
+            itemIds = data.getMenuItemIds().subList(0, Math.min(3, rows));
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            fileManager.close();
+            data.delete();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public FileManager load(OnDisk state) {
+        FileManager fileManager = new FileManager(state.data.options());
+        fileManager.close();
+        return fileManager;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public boolean appendOrder(Loaded state) {
+        return append(state);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Threads(4)
+    public boolean appendOrderConcurrent(Loaded state) {
+        return append(state);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public boolean updateDriver(Loaded state) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        UUID driverId = state.driverIds[random.nextInt(state.driverIds.length)];
+        return state.fileManager.updateDriver(driverId, random.nextBoolean(), random.nextInt(10, 51) / 10.0);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public boolean updateOrder(Loaded state) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        UUID orderId = state.orderIds[random.nextInt(state.orderIds.length)];
+        UUID driverId = state.driverIds[random.nextInt(state.driverIds.length)];
+        return state.fileManager.updateOrder(orderId, "ACCEPTED", driverId);
+    }
+
+    private static boolean append(Loaded state) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return state.fileManager.appendOrder(UUID.randomUUID(),
+            state.customerIds[random.nextInt(state.customerIds.length)],
+            state.restaurantIds[random.nextInt(state.restaurantIds.length)],
+            state.itemIds, "PLACED", null, System.currentTimeMillis(), 1248);
+    }
+}
@@ -0,0 +1,107 @@
+package pasoeats;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * OrderManager place and acceptNext, one thread doing both and placers racing acceptors.
+ * "memory" uses the in-memory OrderManager, "file" saves every order through a FileManager.
+ * Each iteration starts from an empty manager so the maps don't grow run over run.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class OrderManagerBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Orders {
+        @Param({"memory", "file"})
+        public String storage;
+
+        Datasets data;
+        FileManager fileManager;
+        OrderManager orderManager;
+        final UUID customerId = UUID.randomUUID();
+        final UUID restaurantId = UUID.randomUUID();
+        final UUID driverId = UUID.randomUUID();
+        final List<String> items = new ArrayList<>();
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            items.clear();
+            for (int i = 0; i < 3; i++) {
+                items.add(UUID.randomUUID().toString());
+            }
+            if (storage.equals("file")) {
+                data = Datasets.empty();
+                fileManager = new FileManager(data.options());
+                orderManager = new OrderManager(fileManager);
+            } else {
+                orderManager = new OrderManager();
+            }
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() {
+            if (fileManager != null) {
+                fileManager.close();
+                data.delete();
+                fileManager = null;
+            }
+        }
+
+        OrderManager.Order place() {
+            OrderManager.Order order = orderManager.place(customerId, restaurantId, items, 1248);
+            orderManager.enqueue(order.getId()); // what DispatchEngine.submit does
+            return order;
+        }
+
+        OrderManager.Order accept() {
+            OrderManager.Order order = orderManager.acceptNext(driverId);
+            if (order != null) {
+                orderManager.persistAccepted(order); // what DispatchEngine does once the pair lock is let go
+            }
+            return order;
+        }
+    }
+
+    @Benchmark
+    public OrderManager.Order placeAndAccept(Orders state) {
+        state.place();
+        return state.accept();
+    }
+
+    @Benchmark
+    @Group("concurrent")
+    @GroupThreads(2)
+    public OrderManager.Order place(Orders state) {
+        return state.place();
+    }
+
+    @Benchmark
+    @Group("concurrent")
+    @GroupThreads(2)
+    public OrderManager.Order acceptNext(Orders state) {
+        return state.accept(); // null when the placers are behind
+    }
+}
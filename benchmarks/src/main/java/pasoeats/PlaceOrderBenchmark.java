@@ -0,0 +1,108 @@
+package pasoeats;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Basket pricing on its own (OrderPricer.quote) and the whole AppController.placeOrder path
+ * (price, place, save, submit) for a logged in customer.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PlaceOrderBenchmark {
+    private static final int BASKETS = 1024;
+
+    /**
+     * AppController with no UI, logged in as one of the generated customers
+     */
+    static final class Controller extends AppController {
+        Controller(UUID customerId) {
+            this.currentUserID = customerId;
+            this.currentUserRole = UserRole.CUSTOMER;
+        }
+
+        @Override
+        public void start() {}
+
+        @Override
+        public void shutdown() {
+            getDispatchEngine().stop();
+            getFileManager().close();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Shop {
+        @Param({"1000", "100000"})
+        public int rows;
+
+        Datasets data;
+        Controller controller;
+        UUID customerId;
+        List<List<String>> baskets;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            data = Datasets.generate(rows, 42);
+            System.setProperty("pasoeats.dataDir", data.getDirectory().toString()); // AppController makes its own FileManager
+            customerId = data.getCustomerIds().get(0);
+            controller = new Controller(customerId);
+
+            // Three items from one restaurant per basket, see Datasets for where they sit
+            List<UUID> restaurants = data.getRestaurantIds();
+            List<UUID> items = data.getMenuItemIds();
+            baskets = new ArrayList<>(BASKETS);
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < BASKETS; i++) {
+                int restaurant = random.nextInt(restaurants.size());
+                List<String> basket = new ArrayList<>(3);
+                for (int j = 0; j < 3; j++) {
+                    int item = Math.min(items.size() - 1, restaurant + restaurants.size() * random.nextInt(10));
+                    basket.add(items.get(item).toString());
+                }
+                baskets.add(basket);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            controller.shutdown();
+            System.clearProperty("pasoeats.dataDir");
+            data.delete();
+        }
+
+        List<String> nextBasket() {
+            return baskets.get(ThreadLocalRandom.current().nextInt(BASKETS));
+        }
+    }
+
+    @Benchmark
+    public OrderPricer.Quote quote(Shop state) {
+        return state.controller.getFileManager().getOrderPricer().quote(state.nextBasket());
+    }
+
+    @Benchmark
+    public OrderManager.Order placeOrder(Shop state) {
+        return state.controller.placeOrder(state.customerId, state.nextBasket());
+    }
+}